@@ -1,12 +1,18 @@
 package cassdemo;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.*;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
+import cassdemo.monitoring.MetricsPublisher;
 import cassdemo.scenarios.*;
+import cassdemo.trace.TraceReader;
+import cassdemo.trace.TraceRecorder;
+import cassdemo.trace.TraceReplayer;
 
 public class Main {
 
@@ -40,7 +46,16 @@ public class Main {
 			ex.printStackTrace();
 		}
 			
-		BackendSession session = new BackendSession(contactPoint, keyspace);
+		EventSink.install(EventSink.fromProperties(properties));
+
+		BackendSession session = new BackendSession(contactPoint, keyspace, properties);
+		MetricsPublisher metricsPublisher = MetricsPublisher.start(session, properties);
+		TraceRecorder traceRecorder = null;
+		String traceFile = properties.getProperty("trace_file", "");
+		if (!traceFile.isEmpty()) {
+			traceRecorder = new TraceRecorder(new File(traceFile));
+			session.addOperationListener(traceRecorder);
+		}
 		ScenarioService scenarioService = new ScenarioService();
 
 		Scanner sc= new Scanner(System.in);    //System.in is a standard input stream
@@ -55,6 +70,7 @@ public class Main {
 			System.out.println("4: 50 users commenting the same post:");
 			System.out.println("5: 50 users blog simulation:");
 			System.out.println("6: clear tables:");
+			System.out.println("7: replay trace file:");
 			scenario = sc.nextInt();
 			if(scenario == 0) {
 				break;
@@ -100,10 +116,40 @@ public class Main {
 				scenarioService.execute(new FourthScenario(session, postId), 100);
 			} else if(scenario == 5) {
 				scenarioService.executeForTimeInSeconds(new FifthScenario(session), 50, 10);
+				if (session.getReadLimiter() != null) {
+					System.out.println(session.getReadLimiter());
+					System.out.println(session.getWriteLimiter());
+				}
+				if (session.getHotKeys() != null) {
+					System.out.print(session.getHotKeys());
+				}
+				if (session.getQueryTraces() != null) {
+					System.out.print(session.getQueryTraces());
+				}
+				if (session.getAuditor() != null) {
+					System.out.println(session.getAuditor());
+				}
 			} else if(scenario == 6) {
 				session.truncateTables();
+			} else if(scenario == 7) {
+				System.out.println("trace file:");
+				String file = sc.next();
+				System.out.println("speed (1 = recorded pace, 0 = as fast as possible):");
+				double speed = sc.nextDouble();
+				System.out.println("workers:");
+				int workers = sc.nextInt();
+				TraceReplayer replayer = new TraceReplayer(session, workers, speed);
+				replayer.replay(TraceReader.readAll(new File(file)));
+				System.out.print(replayer.report());
 			}
 		}
+		if (traceRecorder != null) {
+			traceRecorder.close();
+			System.out.println(traceRecorder);
+		}
+		metricsPublisher.close();
+		System.out.println(EventSink.get());
+		EventSink.get().close();
 		System.exit(0);
 	}
 }
@@ -1,15 +1,30 @@
 package cassdemo.backend;
 
+import cassdemo.metrics.ThreadCosts;
+import cassdemo.trace.TraceOp;
 import com.datastax.driver.core.*;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import static com.datastax.driver.core.ConsistencyLevel.ONE;
@@ -32,7 +47,42 @@ public class BackendSession {
 
 	private Session session;
 
+	private final CommentShardRouter commentShardRouter;
+
+	// categories this session already recorded in the categories table
+	private final Set<String> knownCategories = ConcurrentHashMap.newKeySet();
+
+	private final int multiGetMaxInFlight;
+
+	private final PostKeyCache postKeyCache;
+
+	private ConcurrencyLimiter readLimiter;
+	private ConcurrencyLimiter writeLimiter;
+
+	private WriteBehindJournal journal;
+
+	private HotKeyTracker hotKeys;
+	private MeteredSession meteredSession;
+	private OperationCosts operationCosts;
+	private QueryTraceSampler queryTraces;
+	private DivergenceAuditor auditor;
+
+	private final List<OperationListener> operationListeners = new CopyOnWriteArrayList<>();
+
+	// level each statement was prepared with, so overrides can be undone
+	private final Map<PreparedStatement, ConsistencyLevel> defaultConsistency = new HashMap<>();
+
 	public BackendSession(String contactPoint, String keyspace) throws BackendException {
+		this(contactPoint, keyspace, new Properties());
+	}
+
+	public BackendSession(String contactPoint, String keyspace, Properties properties) throws BackendException {
+		commentShardRouter = new CommentShardRouter(
+				Integer.parseInt(properties.getProperty("comments_shard_threshold", "200")),
+				Integer.parseInt(properties.getProperty("comments_shard_count", "8")),
+				Long.parseLong(properties.getProperty("comments_shard_layout_ttl_ms", "5000")));
+		multiGetMaxInFlight = Integer.parseInt(properties.getProperty("multiget_max_in_flight", "32"));
+		postKeyCache = new PostKeyCache(Integer.parseInt(properties.getProperty("post_key_cache_size", "10000")));
 
 		List<InetSocketAddress> contactPoints = new ArrayList<>();
 		contactPoints.add(new InetSocketAddress(contactPoint, 9042));
@@ -45,12 +95,177 @@ public class BackendSession {
 						setConsistencyLevel(QUORUM))
 				.build();
 
+		boolean runIsolation = Boolean.parseBoolean(properties.getProperty("run_isolation", "false"));
+		String runKeyspace = keyspace;
+		if (runIsolation) {
+			SchemaScript schema;
+			try {
+				schema = SchemaScript.read(new File(properties.getProperty("run_schema", "schema/schema.cql")));
+			} catch (IOException e) {
+				throw new BackendException("Could not read the run schema. " + e.getMessage() + ".", e);
+			}
+			runKeyspace = RunKeyspaces.create(cluster, schema, keyspace);
+		}
 		try {
-			session = cluster.connect(keyspace);
+			session = cluster.connect(runKeyspace);
 		} catch (Exception e) {
 			throw new BackendException("Could not connect to the cluster. " + e.getMessage() + ".", e);
 		}
+		if (runIsolation) {
+			RunKeyspaces.dropOld(session, keyspace, runKeyspace, Integer.parseInt(properties.getProperty("run_keyspace_retention", "2")));
+		}
+		if (Boolean.parseBoolean(properties.getProperty("cost_accounting_enabled", "false")) && ThreadCosts.isSupported()) {
+			operationCosts = new OperationCosts(Double.parseDouble(properties.getProperty("cost_sample_rate", "1.0")));
+		}
+		if (Boolean.parseBoolean(properties.getProperty("metrics_enabled", "true"))) {
+			meteredSession = new MeteredSession(session);
+			session = meteredSession;
+		}
+		if (Boolean.parseBoolean(properties.getProperty("query_trace_enabled", "false"))) {
+			queryTraces = new QueryTraceSampler();
+			session = new QueryTracingSession(session, queryTraces,
+					Double.parseDouble(properties.getProperty("query_trace_sample_rate", "0.001")),
+					Integer.parseInt(properties.getProperty("query_trace_queue", "64")));
+		}
+		if (Boolean.parseBoolean(properties.getProperty("limiter_enabled", "true"))) {
+			readLimiter = createLimiter("reads", properties);
+			writeLimiter = createLimiter("writes", properties);
+			session = new LimitedSession(session, readLimiter, writeLimiter);
+		}
+		if (Boolean.parseBoolean(properties.getProperty("hot_keys_enabled", "true"))) {
+			hotKeys = new HotKeyTracker(
+					Integer.parseInt(properties.getProperty("hot_keys_depth", "4")),
+					Integer.parseInt(properties.getProperty("hot_keys_width", "4096")),
+					Integer.parseInt(properties.getProperty("hot_keys_top", "10")));
+			session = new KeyTrackingSession(session, hotKeys);
+		}
 		prepareStatements();
+		setConsistencyLevels(
+				consistencyLevel(properties.getProperty("read_consistency", "")),
+				consistencyLevel(properties.getProperty("write_consistency", "")));
+
+		if (Boolean.parseBoolean(properties.getProperty("journal_enabled", "false"))) {
+			try {
+				journal = new WriteBehindJournal(
+						new File(properties.getProperty("journal_dir", "journal")),
+						Integer.parseInt(properties.getProperty("journal_segment_bytes", "8388608")),
+						Integer.parseInt(properties.getProperty("journal_max_segments", "16")),
+						Long.parseLong(properties.getProperty("journal_append_timeout_ms", "1000")),
+						Integer.parseInt(properties.getProperty("journal_batch_size", "64")),
+						Long.parseLong(properties.getProperty("journal_sync_interval_ms", "0")),
+						this::replayJournal);
+			} catch (Exception e) {
+				throw new BackendException("Could not open the write-behind journal. " + e.getMessage() + ".", e);
+			}
+		}
+		if (Boolean.parseBoolean(properties.getProperty("audit_enabled", "false"))) {
+			try {
+				auditor = new DivergenceAuditor(session,
+						new File(properties.getProperty("audit_dir", "audit")),
+						Integer.parseInt(properties.getProperty("audit_depth", "10")),
+						Double.parseDouble(properties.getProperty("audit_rows_per_second", "1000")),
+						Long.parseLong(properties.getProperty("audit_grace_ms", "60000")),
+						Long.parseLong(properties.getProperty("audit_pause_ms", "60000")));
+			} catch (Exception e) {
+				throw new BackendException("Could not start the divergence auditor. " + e.getMessage() + ".", e);
+			}
+		}
+	}
+
+	private static ConsistencyLevel consistencyLevel(String name) {
+		return name.trim().isEmpty() ? null : ConsistencyLevel.valueOf(name.trim().toUpperCase());
+	}
+
+	private static ConcurrencyLimiter createLimiter(String name, Properties properties) {
+		return new ConcurrencyLimiter(name,
+				Integer.parseInt(properties.getProperty("limiter_initial_limit", "32")),
+				Integer.parseInt(properties.getProperty("limiter_min_limit", "4")),
+				Integer.parseInt(properties.getProperty("limiter_max_limit", "512")),
+				Long.parseLong(properties.getProperty("limiter_queue_timeout_ms", "1000")));
+	}
+
+	/* Null when the limiter is disabled. */
+	public ConcurrencyLimiter getReadLimiter() {
+		return readLimiter;
+	}
+
+	/* Null when the limiter is disabled. */
+	public ConcurrencyLimiter getWriteLimiter() {
+		return writeLimiter;
+	}
+
+	public void addOperationListener(OperationListener listener) {
+		operationListeners.add(listener);
+	}
+
+	public void removeOperationListener(OperationListener listener) {
+		operationListeners.remove(listener);
+	}
+
+	private long operationStart() {
+		if (operationCosts == null) {
+			return operationListeners.isEmpty() ? 0 : System.nanoTime();
+		}
+		long start = System.nanoTime();
+		operationCosts.begin(start);
+		return start;
+	}
+
+	private void operationDone(TraceOp op, long start, int payloadSize, UUID key1, UUID key2, UUID key3, Date timestamp, String name) {
+		if (start == 0) {
+			return;
+		}
+		if (operationCosts != null) {
+			operationCosts.end(op, start);
+		}
+		long end = System.nanoTime();
+		for (OperationListener listener : operationListeners) {
+			listener.operationCompleted(op, start, end, payloadSize, key1, key2, key3, timestamp == null ? 0 : timestamp.getTime(), name);
+		}
+	}
+
+	/* Null unless cost_accounting_enabled is set and the JVM can measure per-thread costs. */
+	public OperationCosts getOperationCosts() {
+		return operationCosts;
+	}
+
+	/* Empty when metrics_enabled is false. */
+	public Collection<StatementMetrics> getStatementMetrics() {
+		return meteredSession == null ? new ArrayList<>() : meteredSession.getStatementMetrics();
+	}
+
+	/* The keyspace in use, a generated one with run_isolation. */
+	public String getKeyspace() {
+		return session.getLoggedKeyspace();
+	}
+
+	public Metrics getDriverMetrics() {
+		return session.getCluster().getMetrics();
+	}
+
+	/* Per-host connections and in-flight requests right now. */
+	public Session.State getSessionState() {
+		return session.getState();
+	}
+
+	/* Null when hot_keys_enabled is false. */
+	public HotKeyTracker getHotKeys() {
+		return hotKeys;
+	}
+
+	/* Null when query_trace_enabled is false. */
+	public QueryTraceSampler getQueryTraces() {
+		return queryTraces;
+	}
+
+	/* Null unless journal_enabled is set. */
+	public WriteBehindJournal getJournal() {
+		return journal;
+	}
+
+	/* Null unless audit_enabled is set. */
+	public DivergenceAuditor getAuditor() {
+		return auditor;
 	}
 
 	private static PreparedStatement CREATE_NEW_USER;
@@ -59,6 +274,8 @@ public class BackendSession {
 	private static PreparedStatement CREATE_NEW_POST_CATEGORY;
 	private static PreparedStatement SELECT_ALL_POSTS_BY_CATEGORY;
 	private static PreparedStatement SELECT_NEWEST_POSTS_BY_CATEGORY;
+	private static PreparedStatement CREATE_CATEGORY;
+	private static PreparedStatement SELECT_CATEGORIES;
 	private static PreparedStatement SELECT_ALL_POSTS_BY_AUTHOR;
 	private static PreparedStatement SELECT_ALL_POSTS;
 	private static PreparedStatement SELECT_NEWEST_POSTS_BY_AUTHOR;
@@ -68,6 +285,10 @@ public class BackendSession {
 	private static PreparedStatement SELECT_CONCRETE_POST_BY_AUTHOR;
 	private static PreparedStatement EDIT_CONCRETE_POST_BY_CATEGORY;
 	private static PreparedStatement EDIT_CONCRETE_POST_BY_AUTHOR;
+	private static PreparedStatement CREATE_NEW_POST_BY_ID;
+	private static PreparedStatement SELECT_POST_BY_ID;
+	private static PreparedStatement EDIT_POST_BY_ID;
+	private static PreparedStatement DELETE_POST_BY_ID;
 
 	private static PreparedStatement CREATE_NEW_COMMENT_BY_POST;
 	private static PreparedStatement CREATE_NEW_COMMENT_BY_AUTHOR;
@@ -78,6 +299,18 @@ public class BackendSession {
 	private static PreparedStatement UPDATE_COMMENT_BY_POST;
 	private static PreparedStatement UPDATE_COMMENT_BY_AUTHOR;
 
+	private static PreparedStatement SELECT_CONCRETE_COMMENT_BY_POST;
+	private static PreparedStatement SELECT_CONCRETE_COMMENT_BY_AUTHOR;
+	private static PreparedStatement SELECT_COMMENT_SHARDS;
+	private static PreparedStatement PROMOTE_COMMENT_SHARDS;
+	private static PreparedStatement CREATE_NEW_COMMENT_BY_POST_SHARD;
+	private static PreparedStatement SELECT_NEWEST_COMMENTS_BY_POST;
+	private static PreparedStatement SELECT_OLDER_COMMENTS_BY_POST;
+	private static PreparedStatement SELECT_NEWEST_COMMENTS_BY_POST_SHARD;
+	private static PreparedStatement SELECT_OLDER_COMMENTS_BY_POST_SHARD;
+	private static PreparedStatement DELETE_COMMENT_BY_POST_SHARD;
+	private static PreparedStatement UPDATE_COMMENT_BY_POST_SHARD;
+
 	private static PreparedStatement SELECT_POSTS_LIKED_BY_USER;
 	private static PreparedStatement SELECT_POST_LIKED_BY_USER;
 	private static PreparedStatement CREATE_LIKED_POST_BY_USER;
@@ -93,12 +326,19 @@ public class BackendSession {
 	private static PreparedStatement TRUNCATE_USERS;
 	private static PreparedStatement TRUNCATE_POSTS_BY_AUTHOR;
 	private static PreparedStatement TRUNCATE_POSTS_BY_CATEGORY;
+	private static PreparedStatement TRUNCATE_POSTS_BY_ID;
 	private static PreparedStatement TRUNCATE_POSTS_LIKES;
 	private static PreparedStatement TRUNCATE_LIKED_POST_BY_USER;
 	private static PreparedStatement TRUNCATE_COMMENTS_BY_AUTHOR;
 	private static PreparedStatement TRUNCATE_COMMENTS_BY_POST;
+	private static PreparedStatement TRUNCATE_COMMENTS_BY_POST_SHARD;
+	private static PreparedStatement TRUNCATE_COMMENT_SHARDS;
+	private static PreparedStatement TRUNCATE_CATEGORIES;
 
 
+	// the categories table is a single small partition, so listing it is one read
+	private static final int CATEGORIES_BUCKET = 0;
+
 	private static final String POST_BY_CATEGORY_FORMAT = "- %-10s %-10s %-10s %-10s %-10s %-10s-\n";
 	private static final String POST_BY_AUTHOR_FORMAT = "- %-10s %-10s %-10s %-10s %-10s -\n";
 	private static final String COMMENTS_BY_POST_FORMAT = "- %-10s %-10s %-10s %-10s %-10s %-10s -\n";
@@ -109,58 +349,119 @@ public class BackendSession {
 
 	private void prepareStatements() throws BackendException {
 		try {
-			SELECT_ALL_POSTS_BY_CATEGORY = session.prepare("SELECT * from posts_by_category where categoryName = (?)");
-			SELECT_NEWEST_POSTS_BY_CATEGORY = session.prepare("SELECT * from posts_by_category where categoryName = (?) LIMIT 10");
-			SELECT_ALL_POSTS_BY_AUTHOR = session.prepare("SELECT * from posts_by_author where authorId = (?)").setConsistencyLevel(QUORUM);
-			SELECT_ALL_POSTS = session.prepare("SELECT * from posts_by_author");
-			SELECT_NEWEST_POSTS_BY_AUTHOR = session.prepare("SELECT * from posts_by_author where authorId = (?) LIMIT 10");
-			SELECT_CONCRETE_POST_BY_CATEGORY = session.prepare("SELECT * FROM posts_by_category where categoryName = (?) and createdAt = (?) and postId = (?)");
-			SELECT_CONCRETE_POST_BY_AUTHOR = session.prepare("SELECT * FROM posts_by_author where authorId = (?) and createdAt = (?) and postId = (?)").setConsistencyLevel(QUORUM);
-
-			CREATE_NEW_USER = session.prepare("INSERT INTO users (userId, name, password, email, age) VALUES (?, ?, ?, ?, ?)");
-			CREATE_NEW_POST_AUTHOR = session.prepare("INSERT INTO Posts_by_author (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)").setConsistencyLevel(QUORUM);
-			CREATE_NEW_POST_CATEGORY = session.prepare("INSERT INTO Posts_by_category (categoryName, postId, postContent, createdAt, authorId, authorName) VALUES (?, ?, ?, ?, ?, ?)").setConsistencyLevel(QUORUM);
-
-			DELETE_POST_BY_CATEGORY = session.prepare("DELETE FROM posts_by_category where categoryName = (?) and createdAt = (?) and postId = (?)");
-			DELETE_POST_BY_AUTHOR = session.prepare("DELETE FROM posts_by_author where authorId = (?) and createdAt = (?) and postId = (?)");
-
-			EDIT_CONCRETE_POST_BY_CATEGORY = session.prepare("UPDATE posts_by_category set postContent = (?) where categoryName = (?) and createdAt = (?) and postId = (?)");
-			EDIT_CONCRETE_POST_BY_AUTHOR = session.prepare("UPDATE posts_by_author set postContent = (?) where authorId = (?) and createdAt = (?) and postId = (?)");
+			SELECT_ALL_POSTS_BY_CATEGORY = prepare("SELECT * from posts_by_category where categoryName = (?)");
+			SELECT_NEWEST_POSTS_BY_CATEGORY = prepare("SELECT * from posts_by_category where categoryName = (?) LIMIT 10");
+			SELECT_CATEGORIES = prepare("SELECT categoryName from categories where bucket = (?)");
+			CREATE_CATEGORY = prepare("INSERT INTO categories (bucket, categoryName) VALUES (?, ?)");
+			SELECT_ALL_POSTS_BY_AUTHOR = prepare("SELECT * from posts_by_author where authorId = (?)").setConsistencyLevel(QUORUM);
+			SELECT_ALL_POSTS = prepare("SELECT * from posts_by_author");
+			SELECT_NEWEST_POSTS_BY_AUTHOR = prepare("SELECT * from posts_by_author where authorId = (?) LIMIT 10");
+			SELECT_CONCRETE_POST_BY_CATEGORY = prepare("SELECT * FROM posts_by_category where categoryName = (?) and createdAt = (?) and postId = (?)");
+			SELECT_CONCRETE_POST_BY_AUTHOR = prepare("SELECT * FROM posts_by_author where authorId = (?) and createdAt = (?) and postId = (?)").setConsistencyLevel(QUORUM);
+
+			CREATE_NEW_USER = prepare("INSERT INTO users (userId, name, password, email, age) VALUES (?, ?, ?, ?, ?)");
+			CREATE_NEW_POST_AUTHOR = prepare("INSERT INTO Posts_by_author (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)").setConsistencyLevel(QUORUM);
+			CREATE_NEW_POST_CATEGORY = prepare("INSERT INTO Posts_by_category (categoryName, postId, postContent, createdAt, authorId, authorName) VALUES (?, ?, ?, ?, ?, ?)").setConsistencyLevel(QUORUM);
+
+			DELETE_POST_BY_CATEGORY = prepare("DELETE FROM posts_by_category where categoryName = (?) and createdAt = (?) and postId = (?)");
+			DELETE_POST_BY_AUTHOR = prepare("DELETE FROM posts_by_author where authorId = (?) and createdAt = (?) and postId = (?)");
+
+			EDIT_CONCRETE_POST_BY_CATEGORY = prepare("UPDATE posts_by_category set postContent = (?) where categoryName = (?) and createdAt = (?) and postId = (?)");
+			EDIT_CONCRETE_POST_BY_AUTHOR = prepare("UPDATE posts_by_author set postContent = (?) where authorId = (?) and createdAt = (?) and postId = (?)");
+
+			CREATE_NEW_POST_BY_ID = prepare("INSERT INTO posts_by_id (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)").setConsistencyLevel(QUORUM);
+			SELECT_POST_BY_ID = prepare("SELECT * FROM posts_by_id where postId = (?)");
+			EDIT_POST_BY_ID = prepare("UPDATE posts_by_id set postContent = (?) where postId = (?)");
+			DELETE_POST_BY_ID = prepare("DELETE FROM posts_by_id where postId = (?)");
+
+			CREATE_NEW_COMMENT_BY_POST = prepare("INSERT INTO comments_by_post (postId, authorId, authorName, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?, ?)");
+			CREATE_NEW_COMMENT_BY_AUTHOR = prepare("INSERT INTO comments_by_author (postId, authorId, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?)").setConsistencyLevel(ONE);
+
+			SELECT_COMMENTS_BY_POST = prepare("SELECT * from comments_by_post where postId = (?)").setConsistencyLevel(ONE);
+			SELECT_COMMENTS_BY_AUTHOR = prepare("SELECT * from comments_by_author where authorId = (?)").setConsistencyLevel(ONE);
+
+			DELETE_COMMENT_BY_POST = prepare("DELETE FROM comments_by_post where postId = (?) and createdAt = (?) and commentId = (?)");
+			DELETE_COMMENT_BY_AUTHOR = prepare("DELETE FROM comments_by_author where authorId = (?) and createdAt = (?) and commentId = (?)");
+
+			UPDATE_COMMENT_BY_POST = prepare("UPDATE comments_by_post set commentContent = (?) where postId = (?) and createdAt = (?) and commentId = (?)");
+			UPDATE_COMMENT_BY_AUTHOR = prepare("UPDATE comments_by_author set commentContent = (?) where authorId = (?) and createdAt = (?) and commentId = (?)");
+
+			SELECT_CONCRETE_COMMENT_BY_POST = prepare("SELECT commentId from comments_by_post where postId = (?) and createdAt = (?) and commentId = (?)");
+			SELECT_CONCRETE_COMMENT_BY_AUTHOR = prepare("SELECT commentId from comments_by_author where authorId = (?) and createdAt = (?) and commentId = (?)").setConsistencyLevel(ONE);
+			SELECT_COMMENT_SHARDS = prepare("SELECT * from comment_shards where postId = (?)");
+			PROMOTE_COMMENT_SHARDS = prepareFixed("INSERT INTO comment_shards (postId, shardCount, promotedAt) VALUES (?, ?, ?) IF NOT EXISTS");
+			CREATE_NEW_COMMENT_BY_POST_SHARD = prepare("INSERT INTO comments_by_post_shard (postId, shard, authorId, authorName, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?, ?, ?)");
+			SELECT_NEWEST_COMMENTS_BY_POST = prepare("SELECT * from comments_by_post where postId = (?) LIMIT ?").setConsistencyLevel(ONE);
+			SELECT_OLDER_COMMENTS_BY_POST = prepare("SELECT * from comments_by_post where postId = (?) and (createdAt, commentId) < (?, ?) LIMIT ?").setConsistencyLevel(ONE);
+			SELECT_NEWEST_COMMENTS_BY_POST_SHARD = prepare("SELECT * from comments_by_post_shard where postId = (?) and shard = (?) LIMIT ?").setConsistencyLevel(ONE);
+			SELECT_OLDER_COMMENTS_BY_POST_SHARD = prepare("SELECT * from comments_by_post_shard where postId = (?) and shard = (?) and (createdAt, commentId) < (?, ?) LIMIT ?").setConsistencyLevel(ONE);
+			DELETE_COMMENT_BY_POST_SHARD = prepare("DELETE FROM comments_by_post_shard where postId = (?) and shard = (?) and createdAt = (?) and commentId = (?)");
+			UPDATE_COMMENT_BY_POST_SHARD = prepare("UPDATE comments_by_post_shard set commentContent = (?) where postId = (?) and shard = (?) and createdAt = (?) and commentId = (?)");
+
+			SELECT_POSTS_LIKED_BY_USER = prepare("SELECT * FROM liked_post_by_user where userId = (?)");
+			SELECT_POST_LIKED_BY_USER = prepare("SELECT * FROM liked_post_by_user where userId = (?) and postId = (?)");
+			CREATE_LIKED_POST_BY_USER = prepare("INSERT INTO liked_post_by_user (postId, userId) VALUES (?, ?)").setConsistencyLevel(ONE);
+			DELETE_LIKED_POST_BY_USER = prepare("DELETE FROM liked_post_by_user where userId = (?) and postId = (?)");
+
+			SELECT_POST_LIKES = prepare("SELECT * from post_likes where postId = (?)");
+			INCREMENT_POST_LIKE = prepareFixed("UPDATE post_likes SET postLikesCounter = postLikesCounter + 1 where postId = (?)").setConsistencyLevel(ONE);
+			DECREMENT_POST_LIKE = prepareFixed("UPDATE post_likes SET postLikesCounter = postLikesCounter - 1 where postId = (?)");
+			DELETE_POST_LIKES = prepareFixed("DELETE FROM post_likes where postId = (?)");
+			TRUNCATE_USERS = prepareFixed("TRUNCATE users");
+			TRUNCATE_POSTS_BY_AUTHOR = prepareFixed("TRUNCATE posts_by_author");
+			TRUNCATE_POSTS_BY_CATEGORY = prepareFixed("TRUNCATE posts_by_category");
+			TRUNCATE_POSTS_BY_ID = prepareFixed("TRUNCATE posts_by_id");
+			TRUNCATE_LIKED_POST_BY_USER = prepareFixed("TRUNCATE liked_post_by_user");
+			TRUNCATE_POSTS_LIKES = prepareFixed("TRUNCATE post_likes");
+			TRUNCATE_COMMENTS_BY_AUTHOR = prepareFixed("TRUNCATE comments_by_author");
+			TRUNCATE_COMMENTS_BY_POST = prepareFixed("TRUNCATE comments_by_post");
+			TRUNCATE_COMMENTS_BY_POST_SHARD = prepareFixed("TRUNCATE comments_by_post_shard");
+			TRUNCATE_COMMENT_SHARDS = prepareFixed("TRUNCATE comment_shards");
+			TRUNCATE_CATEGORIES = prepareFixed("TRUNCATE categories");
 
-			CREATE_NEW_COMMENT_BY_POST = session.prepare("INSERT INTO comments_by_post (postId, authorId, authorName, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?, ?)");
-			CREATE_NEW_COMMENT_BY_AUTHOR = session.prepare("INSERT INTO comments_by_author (postId, authorId, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?)").setConsistencyLevel(ONE);
-
-			SELECT_COMMENTS_BY_POST = session.prepare("SELECT * from comments_by_post where postId = (?)").setConsistencyLevel(ONE);
-			SELECT_COMMENTS_BY_AUTHOR = session.prepare("SELECT * from comments_by_author where authorId = (?)").setConsistencyLevel(ONE);
+		} catch (Exception e) {
+			throw new BackendException("Could not prepare statements. " + e.getMessage() + ".", e);
+		}
 
-			DELETE_COMMENT_BY_POST = session.prepare("DELETE FROM comments_by_post where postId = (?) and createdAt = (?) and commentId = (?)");
-			DELETE_COMMENT_BY_AUTHOR = session.prepare("DELETE FROM comments_by_author where authorId = (?) and createdAt = (?) and commentId = (?)");
+		for (Map.Entry<PreparedStatement, ConsistencyLevel> entry : defaultConsistency.entrySet()) {
+			entry.setValue(entry.getKey().getConsistencyLevel());
+		}
 
-			UPDATE_COMMENT_BY_POST = session.prepare("UPDATE comments_by_post set commentContent = (?) where postId = (?) and createdAt = (?) and commentId = (?)");
-			UPDATE_COMMENT_BY_AUTHOR = session.prepare("UPDATE comments_by_author set commentContent = (?) where authorId = (?) and createdAt = (?) and commentId = (?)");
+		logger.info("Statements prepared");
+	}
 
-			SELECT_POSTS_LIKED_BY_USER = session.prepare("SELECT * FROM liked_post_by_user where userId = (?)");
-			SELECT_POST_LIKED_BY_USER = session.prepare("SELECT * FROM liked_post_by_user where userId = (?) and postId = (?)");
-			CREATE_LIKED_POST_BY_USER = session.prepare("INSERT INTO liked_post_by_user (postId, userId) VALUES (?, ?)").setConsistencyLevel(ONE);
-			DELETE_LIKED_POST_BY_USER = session.prepare("DELETE FROM liked_post_by_user where userId = (?) and postId = (?)");
+	/* A data statement whose consistency level setConsistencyLevels() may override. */
+	private PreparedStatement prepare(String query) {
+		PreparedStatement statement = session.prepare(query);
+		defaultConsistency.put(statement, null);
+		return statement;
+	}
 
-			SELECT_POST_LIKES = session.prepare("SELECT * from post_likes where postId = (?)");
-			INCREMENT_POST_LIKE = session.prepare("UPDATE post_likes SET postLikesCounter = postLikesCounter + 1 where postId = (?)").setConsistencyLevel(ONE);
-			DECREMENT_POST_LIKE = session.prepare("UPDATE post_likes SET postLikesCounter = postLikesCounter - 1 where postId = (?)");
-			DELETE_POST_LIKES = session.prepare("DELETE FROM post_likes where postId = (?)");
-			TRUNCATE_USERS = session.prepare("TRUNCATE blog.users");
-			TRUNCATE_POSTS_BY_AUTHOR = session.prepare("TRUNCATE blog.posts_by_author");
-			TRUNCATE_POSTS_BY_CATEGORY = session.prepare("TRUNCATE blog.posts_by_category");
-			TRUNCATE_LIKED_POST_BY_USER = session.prepare("TRUNCATE blog.liked_post_by_user");
-			TRUNCATE_POSTS_LIKES = session.prepare("TRUNCATE blog.post_likes");
-			TRUNCATE_COMMENTS_BY_AUTHOR = session.prepare("TRUNCATE blog.comments_by_author");
-			TRUNCATE_COMMENTS_BY_POST = session.prepare("TRUNCATE blog.comments_by_post");
+	/*
+	 * A statement that always keeps the level it was prepared with: counter updates (which
+	 * reject ANY), the comment shard LWT and TRUNCATE, whose guarantees a weaker level
+	 * would quietly change.
+	 */
+	private PreparedStatement prepareFixed(String query) {
+		return session.prepare(query);
+	}
 
-		} catch (Exception e) {
-			throw new BackendException("Could not prepare statements. " + e.getMessage() + ".", e);
+	/*
+	 * Applies `read` to every overridable SELECT and `write` to every other overridable
+	 * statement; null restores the level the statement was prepared with. Statements bound
+	 * afterwards pick up the change, so callers should switch levels between runs rather
+	 * than during one.
+	 */
+	public synchronized void setConsistencyLevels(ConsistencyLevel read, ConsistencyLevel write) {
+		if (read == ConsistencyLevel.ANY) {
+			throw new IllegalArgumentException("Consistency level ANY is only valid for writes");
+		}
+		for (Map.Entry<PreparedStatement, ConsistencyLevel> entry : defaultConsistency.entrySet()) {
+			PreparedStatement statement = entry.getKey();
+			boolean isRead = statement.getQueryString().trim().toUpperCase().startsWith("SELECT");
+			ConsistencyLevel override = isRead ? read : write;
+			statement.setConsistencyLevel(override != null ? override : entry.getValue());
 		}
-
-		logger.info("Statements prepared");
 	}
 
 	public void truncateTables() throws BackendException {
@@ -171,6 +472,10 @@ public class BackendSession {
 		BoundStatement bs5 = new BoundStatement(TRUNCATE_POSTS_LIKES);
 		BoundStatement bs6 = new BoundStatement(TRUNCATE_COMMENTS_BY_AUTHOR);
 		BoundStatement bs7 = new BoundStatement(TRUNCATE_COMMENTS_BY_POST);
+		BoundStatement bs8 = new BoundStatement(TRUNCATE_COMMENTS_BY_POST_SHARD);
+		BoundStatement bs9 = new BoundStatement(TRUNCATE_COMMENT_SHARDS);
+		BoundStatement bs10 = new BoundStatement(TRUNCATE_POSTS_BY_ID);
+		BoundStatement bs11 = new BoundStatement(TRUNCATE_CATEGORIES);
 
 		try {
 			session.execute(bs1);
@@ -180,6 +485,13 @@ public class BackendSession {
 			session.execute(bs5);
 			session.execute(bs6);
 			session.execute(bs7);
+			session.execute(bs8);
+			session.execute(bs9);
+			session.execute(bs10);
+			session.execute(bs11);
+			commentShardRouter.clear();
+			knownCategories.clear();
+			postKeyCache.clear();
 			System.out.println("tables truncated");
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: truncate tables. " + e.getMessage() + ".", e);
@@ -188,6 +500,7 @@ public class BackendSession {
 
 
 	public List<Row> selectAllPostsByCategory(String categoryName) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_CATEGORY);
 		bs.bind(categoryName);
 
@@ -198,10 +511,12 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all posts. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_POSTS_BY_CATEGORY, start, 0, null, null, null, null, categoryName);
 		return rs.all();
 	}
 
 	public List<Row> selectAllPostsByAuthor(UUID authorId) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_AUTHOR);
 		bs.bind(authorId);
 
@@ -212,6 +527,7 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all posts. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_POSTS_BY_AUTHOR, start, 0, null, authorId, null, null, null);
 		return rs.all();
 	}
 
@@ -220,6 +536,7 @@ public class BackendSession {
 	}
 
 	public String selectNewestPostsByAuthor(UUID authorId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_NEWEST_POSTS_BY_AUTHOR);
 		bs.bind(authorId);
@@ -231,6 +548,7 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all posts. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_NEWEST_POSTS_BY_AUTHOR, start, 0, null, authorId, null, null, null);
 
 		showPostsByAuthor(rs, builder);
 
@@ -238,6 +556,7 @@ public class BackendSession {
 	}
 
 	public String selectNewestPostsByCategory(String categoryName) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_NEWEST_POSTS_BY_CATEGORY);
 		bs.bind(categoryName);
@@ -249,6 +568,7 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all newest posts. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_NEWEST_POSTS_BY_CATEGORY, start, 0, null, null, null, null, categoryName);
 
 		showPostsByCategory(rs, builder);
 
@@ -256,6 +576,7 @@ public class BackendSession {
 	}
 
 	public String selectConcretePostByCategory(String categoryName, Timestamp createdAt, UUID postId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_CONCRETE_POST_BY_CATEGORY);
 		String temp = "2022-01-15 17:55:45.912000+0000";
@@ -270,6 +591,7 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all newest posts. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_CONCRETE_POST_BY_CATEGORY, start, 0, postId, null, null, createdAt, categoryName);
 
 		showPostsByCategory(rs, builder);
 
@@ -278,6 +600,7 @@ public class BackendSession {
 
 
 	public List<Row> selectConcretePostByAuthor(UUID authorId, Timestamp createdAt, UUID postId) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(SELECT_CONCRETE_POST_BY_AUTHOR);
 		bs.bind(authorId, createdAt, postId);
 
@@ -289,26 +612,41 @@ public class BackendSession {
 			throw new BackendException("Could not perform a query: select all newest posts. " + e.getMessage() + ".", e);
 		}
 
+		operationDone(TraceOp.SELECT_CONCRETE_POST_BY_AUTHOR, start, 0, postId, authorId, null, createdAt, null);
 		return rs.all();
 	}
 
 	public void deletePost(UUID postId, UUID authorId, Timestamp createdAt, String categoryName) throws BackendException {
+		long start = operationStart();
 		BoundStatement deletePostByCategoryStatement = new BoundStatement(DELETE_POST_BY_CATEGORY);
 		BoundStatement deletePostByAuthorStatement = new BoundStatement(DELETE_POST_BY_AUTHOR);
+		BoundStatement deletePostByIdStatement = new BoundStatement(DELETE_POST_BY_ID);
 
 		deletePostByCategoryStatement.bind(categoryName, createdAt, postId);
 		deletePostByAuthorStatement.bind(authorId, createdAt, postId);
+		deletePostByIdStatement.bind(postId);
 
 		try {
 			session.execute(deletePostByCategoryStatement);
 			session.execute(deletePostByAuthorStatement);
+			session.execute(deletePostByIdStatement);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform delete post operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Post with postId = " + postId + " and authorId = " + authorId + " deleted");
+		postKeyCache.remove(postId);
+		logger.debug("Post with postId = {} and authorId = {} deleted", postId, authorId);
+		operationDone(TraceOp.DELETE_POST, start, 0, postId, authorId, null, createdAt, categoryName);
+	}
+
+	public void deletePost(UUID postId) throws BackendException {
+		PostKeyCache.PostKey key = postKey(postId);
+		if (key != null) {
+			deletePost(postId, key.authorId, new Timestamp(key.createdAt.getTime()), key.categoryName);
+		}
 	}
 
 	public void createNewUser(UUID userId, String name, String password, String email, int age) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(CREATE_NEW_USER);
 		bs.bind(userId, name, password, email, age);
 		try {
@@ -316,56 +654,289 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform insert new user operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("New user created");
+		logger.debug("New user created");
+		operationDone(TraceOp.CREATE_USER, start, name.length() + password.length() + email.length(), null, userId, null, null, null);
 	}
 
 	public void createNewPost(UUID postId, UUID authorId, String postContent, Timestamp createdAt, String authorName, String categoryName) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs1 = new BoundStatement(CREATE_NEW_POST_AUTHOR);
 		bs1.bind(postId, postContent, createdAt, authorId, authorName, categoryName);
 
+		// same createdAt in every copy, otherwise the category row can't be addressed by the author row's keys
 		BoundStatement bs2 = new BoundStatement(CREATE_NEW_POST_CATEGORY);
-		bs2.bind(categoryName, postId, postContent, new Date(), authorId, authorName);
+		bs2.bind(categoryName, postId, postContent, createdAt, authorId, authorName);
+
+		BoundStatement bs3 = new BoundStatement(CREATE_NEW_POST_BY_ID);
+		bs3.bind(postId, postContent, createdAt, authorId, authorName, categoryName);
 		try {
+			// record the category first, so a post never sits in a category the feed can't list
+			if (!knownCategories.contains(categoryName)) {
+				BoundStatement category = new BoundStatement(CREATE_CATEGORY);
+				category.bind(CATEGORIES_BUCKET, categoryName);
+				session.execute(category);
+				knownCategories.add(categoryName);
+			}
 			session.execute(bs1);
 			session.execute(bs2);
+			session.execute(bs3);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform insert new post operation. " + e.getMessage() + ".", e);
 		}
+		postKeyCache.put(postId, new PostKeyCache.PostKey(authorId, createdAt, categoryName));
+		operationDone(TraceOp.CREATE_POST, start, postContent.length(), postId, authorId, null, createdAt, categoryName);
 	}
 
 	public void editPost(UUID postId, UUID authorId, String newPostContent, Timestamp createdAt, String categoryName) throws BackendException {
+		long start = operationStart();
 		BoundStatement editPostByCategoryStatement = new BoundStatement(EDIT_CONCRETE_POST_BY_CATEGORY);
 		BoundStatement editPostByAuthorStatement = new BoundStatement(EDIT_CONCRETE_POST_BY_AUTHOR);
+		BoundStatement editPostByIdStatement = new BoundStatement(EDIT_POST_BY_ID);
 
 		editPostByCategoryStatement.bind(newPostContent, categoryName, createdAt, postId);
 		editPostByAuthorStatement.bind(newPostContent, authorId, createdAt, postId);
+		editPostByIdStatement.bind(newPostContent, postId);
 
 		try {
 			session.execute(editPostByCategoryStatement);
 			session.execute(editPostByAuthorStatement);
+			session.execute(editPostByIdStatement);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform insert new post operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Post edited");
+		logger.debug("Post edited");
+		operationDone(TraceOp.EDIT_POST, start, newPostContent.length(), postId, authorId, null, createdAt, categoryName);
 	}
 
-	public void createNewComment(UUID postId, UUID authorId, String authorName, Timestamp createdAt, UUID commentId, String commentContent) throws BackendException {
-		BoundStatement createNewCommentByPostStatement = new BoundStatement(CREATE_NEW_COMMENT_BY_POST);
-		BoundStatement createNewCommentByAuthorStatement = new BoundStatement(CREATE_NEW_COMMENT_BY_AUTHOR);
+	public void editPost(UUID postId, String newPostContent) throws BackendException {
+		PostKeyCache.PostKey key = postKey(postId);
+		if (key != null) {
+			editPost(postId, key.authorId, newPostContent, new Timestamp(key.createdAt.getTime()), key.categoryName);
+		}
+	}
 
-		createNewCommentByPostStatement.bind(postId, authorId, authorName, createdAt, commentId, commentContent);
-		createNewCommentByAuthorStatement.bind(postId, authorId, createdAt, commentId, commentContent);
+	/*
+	 * One partition read for any post, no authorId or createdAt needed. Returns null when
+	 * the post doesn't exist.
+	 *
+	 * An edit racing a delete upserts a posts_by_id row holding only postId and postContent.
+	 * Such a row counts as missing. It isn't deleted here: a replica that got the edit
+	 * but not yet the insert shows the same row for a post that does exist.
+	 */
+	public Post selectPostById(UUID postId) throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_POST_BY_ID);
+		bs.bind(postId);
+
+		Row row;
+		try {
+			row = session.execute(bs).one();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select post by id. " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_POST_BY_ID, start, 0, postId, null, null, null, null);
+		return isPost(row) ? rememberPost(Post.fromRow(row)) : null;
+	}
+
+	public Map<UUID, Post> selectPostsById(Collection<UUID> postIds) throws BackendException {
+		long start = operationStart();
+		Map<UUID, ResultSet> results;
+		try {
+			results = new MultiGet(session, multiGetMaxInFlight).execute(postIds, postId -> {
+				BoundStatement bs = new BoundStatement(SELECT_POST_BY_ID);
+				bs.bind(postId);
+				return bs;
+			});
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select posts by id. " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_POSTS_BY_ID, start, postIds.size(), null, null, null, null, null);
+
+		Map<UUID, Post> posts = new HashMap<>();
+		for (Map.Entry<UUID, ResultSet> result : results.entrySet()) {
+			Row row = result.getValue().one();
+			if (isPost(row)) {
+				posts.put(result.getKey(), rememberPost(Post.fromRow(row)));
+			}
+		}
+		return posts;
+	}
 
+	/*
+	 * Keys addressing the post in the author and category tables, from the cache or from
+	 * posts_by_id. Null when the post doesn't exist.
+	 */
+	private PostKeyCache.PostKey postKey(UUID postId) throws BackendException {
+		PostKeyCache.PostKey key = postKeyCache.get(postId);
+		if (key == null) {
+			Post post = selectPostById(postId);
+			if (post != null) {
+				key = new PostKeyCache.PostKey(post.getAuthorId(), post.getCreatedAt(), post.getCategoryName());
+			}
+		}
+		return key;
+	}
+
+	private static boolean isPost(Row row) {
+		return row != null && !row.isNull("createdAt");
+	}
+
+	private Post rememberPost(Post post) {
+		postKeyCache.put(post.getPostId(), new PostKeyCache.PostKey(post.getAuthorId(), post.getCreatedAt(), post.getCategoryName()));
+		return post;
+	}
+
+	public void createNewComment(UUID postId, UUID authorId, String authorName, Timestamp createdAt, UUID commentId, String commentContent) throws BackendException {
+		long start = operationStart();
+		if (journal != null) {
+			journal.append(JournalRecord.newComment(postId, authorId, authorName, createdAt.getTime(), commentId, commentContent));
+			operationDone(TraceOp.CREATE_COMMENT, start, commentContent.length(), postId, authorId, commentId, createdAt, null);
+			return;
+		}
+
+		CommentShardRouter.ShardLayout layout = commentLayout(postId);
 		try {
-			session.execute(createNewCommentByPostStatement);
-			session.execute(createNewCommentByAuthorStatement);
+			for (BoundStatement bs : newCommentStatements(layout, postId, authorId, authorName, createdAt, commentId, commentContent)) {
+				session.execute(bs);
+			}
 		} catch (Exception e) {
 			throw new BackendException("Could not perform insert new comment operation. " + e.getMessage() + ".", e);
 		}
+		afterNewComment(layout, postId);
+		operationDone(TraceOp.CREATE_COMMENT, start, commentContent.length(), postId, authorId, commentId, createdAt, null);
+	}
+
+	private List<BoundStatement> newCommentStatements(CommentShardRouter.ShardLayout layout, UUID postId, UUID authorId, String authorName,
+			Date createdAt, UUID commentId, String commentContent) {
+		BoundStatement createNewCommentByPostStatement;
+		if (layout.isSharded()) {
+			createNewCommentByPostStatement = new BoundStatement(CREATE_NEW_COMMENT_BY_POST_SHARD);
+			createNewCommentByPostStatement.bind(postId, CommentShardRouter.shardFor(commentId, layout.shardCount), authorId, authorName, createdAt, commentId, commentContent);
+		} else {
+			createNewCommentByPostStatement = new BoundStatement(CREATE_NEW_COMMENT_BY_POST);
+			createNewCommentByPostStatement.bind(postId, authorId, authorName, createdAt, commentId, commentContent);
+		}
+		BoundStatement createNewCommentByAuthorStatement = new BoundStatement(CREATE_NEW_COMMENT_BY_AUTHOR);
+		createNewCommentByAuthorStatement.bind(postId, authorId, createdAt, commentId, commentContent);
+
+		List<BoundStatement> statements = new ArrayList<>(2);
+		statements.add(createNewCommentByPostStatement);
+		statements.add(createNewCommentByAuthorStatement);
+		return statements;
+	}
+
+	/*
+	 * The comment is already written at this point, so a failed promotion is only logged;
+	 * the next comment to the post tries again.
+	 */
+	private void afterNewComment(CommentShardRouter.ShardLayout layout, UUID postId) {
+		if (!layout.isSharded() && commentShardRouter.recordUnshardedWrite(postId)) {
+			try {
+				promoteToShardedComments(postId);
+			} catch (BackendException e) {
+				logger.warn("Could not promote comments of post " + postId + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Replays one batch from the write-behind journal. All statements of the batch are sent
+	 * concurrently and every one of them is waited for. Returns the records that still have
+	 * to be written: those with a failed statement, except that an increment whose counter
+	 * update went through comes back as its liked_posts write only, so a retry doesn't count
+	 * the like twice. A counter update that timed out may still have been applied, and its
+	 * retry may count it twice.
+	 */
+	private List<JournalRecord> replayJournal(List<JournalRecord> batch) {
+		List<List<ResultSetFuture>> sent = new ArrayList<>(batch.size());
+		List<CommentShardRouter.ShardLayout> layouts = new ArrayList<>(batch.size());
+		String failure = null;
+		for (JournalRecord record : batch) {
+			List<BoundStatement> statements = new ArrayList<>(2);
+			CommentShardRouter.ShardLayout layout = null;
+			try {
+				if (record.type == JournalRecord.NEW_COMMENT) {
+					layout = commentLayout(record.postId);
+					statements.addAll(newCommentStatements(layout, record.postId, record.userId, record.authorName,
+							new Date(record.createdAt), record.commentId, record.content));
+				} else if (record.type == JournalRecord.INCREMENT_POST_LIKES) {
+					BoundStatement increment = new BoundStatement(INCREMENT_POST_LIKE);
+					increment.bind(record.postId);
+					statements.add(increment);
+					statements.add(likedPostByUserStatement(record.postId, record.userId));
+				} else if (record.type == JournalRecord.LIKED_POST_BY_USER) {
+					statements.add(likedPostByUserStatement(record.postId, record.userId));
+				}
+			} catch (BackendException e) {
+				failure = e.getMessage();
+				statements = null;
+			}
+			List<ResultSetFuture> futures = new ArrayList<>(2);
+			if (statements != null) {
+				for (BoundStatement bs : statements) {
+					try {
+						futures.add(session.executeAsync(bs));
+					} catch (RuntimeException e) {
+						// rejected before it was sent, null marks it failed
+						failure = e.getMessage();
+						futures.add(null);
+					}
+				}
+			}
+			sent.add(statements == null ? null : futures);
+			layouts.add(layout);
+		}
+
+		List<JournalRecord> remaining = new ArrayList<>();
+		for (int i = 0; i < batch.size(); i++) {
+			JournalRecord record = batch.get(i);
+			List<ResultSetFuture> futures = sent.get(i);
+			if (futures == null) {
+				remaining.add(record);
+				continue;
+			}
+			boolean[] done = new boolean[futures.size()];
+			boolean all = true;
+			for (int j = 0; j < futures.size(); j++) {
+				ResultSetFuture future = futures.get(j);
+				if (future == null) {
+					all = false;
+					continue;
+				}
+				try {
+					future.getUninterruptibly();
+					done[j] = true;
+				} catch (Exception e) {
+					failure = e.getMessage();
+					all = false;
+				}
+			}
+			if (all) {
+				if (record.type == JournalRecord.NEW_COMMENT) {
+					afterNewComment(layouts.get(i), record.postId);
+				}
+			} else if (record.type == JournalRecord.INCREMENT_POST_LIKES && done[0]) {
+				remaining.add(JournalRecord.likedPostByUser(record.postId, record.userId));
+			} else {
+				remaining.add(record);
+			}
+		}
+		if (!remaining.isEmpty()) {
+			logger.warn("Could not replay " + remaining.size() + " of " + batch.size() + " journal records: " + failure);
+		}
+		return remaining;
 	}
 
 	public String selectCommentsByPost(UUID postId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
+		CommentShardRouter.ShardLayout layout = commentLayout(postId);
+		if (layout.isSharded()) {
+			showCommentsByPost(selectCommentsByPost(postId, layout, null, null, Integer.MAX_VALUE), builder);
+			operationDone(TraceOp.SELECT_COMMENTS_BY_POST, start, 0, postId, null, null, null, null);
+			return builder.toString();
+		}
+
 		BoundStatement bs = new BoundStatement(SELECT_COMMENTS_BY_POST);
 		bs.bind(postId);
 
@@ -379,10 +950,207 @@ public class BackendSession {
 
 		showCommentsByPost(rs, builder);
 
+		operationDone(TraceOp.SELECT_COMMENTS_BY_POST, start, 0, postId, null, null, null, null);
 		return builder.toString();
 	}
 
+	/*
+	 * Returns comments of the post newest first, pageSize at a time. For sharded posts the
+	 * legacy partition and every shard are read in parallel and merged on (createdAt, commentId).
+	 * Pass the previous page's cursor to continue, or null for the first page. The cursor is
+	 * "<createdAt millis>:<commentId>" of the last comment returned, so comments sharing a
+	 * timestamp are never skipped.
+	 */
+	public Page<Row> selectCommentsPageByPost(UUID postId, int pageSize, String cursor) throws BackendException {
+		long start = operationStart();
+		Date before = null;
+		UUID beforeId = null;
+		if (cursor != null) {
+			int colon = cursor.indexOf(':');
+			if (colon < 0) {
+				throw new BackendException("Malformed comments cursor " + cursor);
+			}
+			before = new Date(Long.parseLong(cursor.substring(0, colon)));
+			beforeId = UUID.fromString(cursor.substring(colon + 1));
+		}
+		List<Row> comments = selectCommentsByPost(postId, commentLayout(postId), before, beforeId, pageSize + 1);
+		operationDone(TraceOp.SELECT_COMMENTS_PAGE_BY_POST, start, pageSize, postId, null, null, null, null);
+		if (comments.size() <= pageSize) {
+			return new Page<>(comments, null);
+		}
+
+		Row last = comments.get(pageSize - 1);
+		return new Page<>(new ArrayList<>(comments.subList(0, pageSize)),
+				last.getTimestamp("createdAt").getTime() + ":" + last.getUUID("commentId"));
+	}
+
+	private List<Row> selectCommentsByPost(UUID postId, CommentShardRouter.ShardLayout layout, Date before, UUID beforeId, int limit) throws BackendException {
+		List<BoundStatement> statements = new ArrayList<>();
+		BoundStatement legacy = new BoundStatement(before == null ? SELECT_NEWEST_COMMENTS_BY_POST : SELECT_OLDER_COMMENTS_BY_POST);
+		if (before == null) {
+			legacy.bind(postId, limit);
+		} else {
+			legacy.bind(postId, before, beforeId, limit);
+		}
+		statements.add(legacy);
+		for (int shard = 0; shard < layout.shardCount; shard++) {
+			BoundStatement bs = new BoundStatement(before == null ? SELECT_NEWEST_COMMENTS_BY_POST_SHARD : SELECT_OLDER_COMMENTS_BY_POST_SHARD);
+			if (before == null) {
+				bs.bind(postId, shard, limit);
+			} else {
+				bs.bind(postId, shard, before, beforeId, limit);
+			}
+			statements.add(bs);
+		}
+
+		List<ResultSetFuture> futures = new ArrayList<>();
+		List<List<Row>> sources = new ArrayList<>();
+		try {
+			for (BoundStatement bs : statements) {
+				futures.add(session.executeAsync(bs));
+			}
+			for (ResultSetFuture future : futures) {
+				sources.add(future.getUninterruptibly().all());
+			}
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select comments by post. " + e.getMessage() + ".", e);
+		}
+		return mergeNewestFirst(sources, limit);
+	}
+
+	/*
+	 * k-way merge of lists that are already sorted by (createdAt, commentId) descending.
+	 */
+	private static List<Row> mergeNewestFirst(List<List<Row>> sources, int limit) {
+		PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> compareComments(sources.get(b[0]).get(b[1]), sources.get(a[0]).get(a[1])));
+		for (int i = 0; i < sources.size(); i++) {
+			if (!sources.get(i).isEmpty()) {
+				heads.add(new int[]{i, 0});
+			}
+		}
+		List<Row> merged = new ArrayList<>();
+		while (!heads.isEmpty() && merged.size() < limit) {
+			int[] head = heads.poll();
+			List<Row> source = sources.get(head[0]);
+			merged.add(source.get(head[1]));
+			if (head[1] + 1 < source.size()) {
+				heads.add(new int[]{head[0], head[1] + 1});
+			}
+		}
+		return merged;
+	}
+
+	/* Clustering order of the comment tables, oldest first. */
+	private static int compareComments(Row a, Row b) {
+		int byTime = a.getTimestamp("createdAt").compareTo(b.getTimestamp("createdAt"));
+		return byTime != 0 ? byTime : compareUuids(a.getUUID("commentId"), b.getUUID("commentId"));
+	}
+
+	/* Cassandra's uuid ordering: version, then time for version 1, then unsigned bytes. */
+	static int compareUuids(UUID a, UUID b) {
+		if (a.version() != b.version()) {
+			return a.version() - b.version();
+		}
+		if (a.version() == 1 && a.timestamp() != b.timestamp()) {
+			return Long.compare(a.timestamp(), b.timestamp());
+		}
+		int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+		return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+	}
+
+	private CommentShardRouter.ShardLayout commentLayout(UUID postId) throws BackendException {
+		CommentShardRouter.ShardLayout layout = commentShardRouter.cachedLayout(postId);
+		if (layout != null) {
+			return layout;
+		}
+
+		BoundStatement bs = new BoundStatement(SELECT_COMMENT_SHARDS);
+		bs.bind(postId);
+
+		Row row;
+		try {
+			row = session.execute(bs).one();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select comment shards. " + e.getMessage() + ".", e);
+		}
+
+		layout = row == null
+				? new CommentShardRouter.ShardLayout(0, null)
+				: new CommentShardRouter.ShardLayout(row.getInt("shardCount"), row.getTimestamp("promotedAt"));
+		commentShardRouter.rememberLayout(postId, layout);
+		return layout;
+	}
+
+	private void promoteToShardedComments(UUID postId) throws BackendException {
+		Date promotedAt = new Date();
+		BoundStatement bs = new BoundStatement(PROMOTE_COMMENT_SHARDS);
+		bs.bind(postId, commentShardRouter.getShardCount(), promotedAt);
+
+		Row row;
+		try {
+			row = session.execute(bs).one();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform promote post comments operation. " + e.getMessage() + ".", e);
+		}
+
+		// when another client promoted the post first, its shard count and timestamp win
+		commentShardRouter.rememberLayout(postId, row.getBool("[applied]")
+				? new CommentShardRouter.ShardLayout(commentShardRouter.getShardCount(), promotedAt)
+				: new CommentShardRouter.ShardLayout(row.getInt("shardCount"), row.getTimestamp("promotedAt")));
+		logger.info("Comments of post " + postId + " moved to sharded layout");
+	}
+
+	/*
+	 * Statements addressing the comments_by_post copy of a comment. Comments written before
+	 * the post was promoted stay in the legacy partition; clients with a stale layout may
+	 * still write there for up to one layout ttl after promotion. Deletes in that window go
+	 * to both partitions, updates (which would upsert a ghost row) check the legacy one first.
+	 */
+	private List<BoundStatement> commentByPostStatements(UUID postId, Timestamp createdAt, UUID commentId,
+			PreparedStatement legacyStatement, PreparedStatement shardStatement, String newContent) throws BackendException {
+		List<BoundStatement> statements = new ArrayList<>();
+		CommentShardRouter.ShardLayout layout = commentLayout(postId);
+		boolean inLegacy = !layout.isSharded()
+				|| createdAt.getTime() < layout.promotedAt.getTime() + commentShardRouter.getLayoutTtlMillis();
+		boolean inShard = layout.isSharded() && !createdAt.before(layout.promotedAt);
+		if (inLegacy && inShard && newContent != null) {
+			inLegacy = commentExistsInLegacyPartition(postId, createdAt, commentId);
+			inShard = !inLegacy;
+		}
+		if (inLegacy) {
+			BoundStatement bs = new BoundStatement(legacyStatement);
+			if (newContent == null) {
+				bs.bind(postId, createdAt, commentId);
+			} else {
+				bs.bind(newContent, postId, createdAt, commentId);
+			}
+			statements.add(bs);
+		}
+		if (inShard) {
+			BoundStatement bs = new BoundStatement(shardStatement);
+			int shard = CommentShardRouter.shardFor(commentId, layout.shardCount);
+			if (newContent == null) {
+				bs.bind(postId, shard, createdAt, commentId);
+			} else {
+				bs.bind(newContent, postId, shard, createdAt, commentId);
+			}
+			statements.add(bs);
+		}
+		return statements;
+	}
+
+	private boolean commentExistsInLegacyPartition(UUID postId, Timestamp createdAt, UUID commentId) throws BackendException {
+		BoundStatement bs = new BoundStatement(SELECT_CONCRETE_COMMENT_BY_POST);
+		bs.bind(postId, createdAt, commentId);
+		try {
+			return session.execute(bs).one() != null;
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select concrete comment by post. " + e.getMessage() + ".", e);
+		}
+	}
+
 	public List<Row> selectCommentsByAuthor(UUID authorId) throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(SELECT_COMMENTS_BY_AUTHOR);
 		bs.bind(authorId);
 		ResultSet rs = null;
@@ -391,10 +1159,28 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all comments by author. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_COMMENTS_BY_AUTHOR, start, 0, null, authorId, null, null, null);
 		return rs.all();
 	}
 
+	/*
+	 * Non-blocking existence checks on the author-keyed tables, for measuring how long a
+	 * write takes to become visible. The future fails with the driver exception.
+	 */
+	public ListenableFuture<Boolean> isPostVisibleByAuthorAsync(UUID authorId, Date createdAt, UUID postId) {
+		BoundStatement bs = new BoundStatement(SELECT_CONCRETE_POST_BY_AUTHOR);
+		bs.bind(authorId, createdAt, postId);
+		return Futures.transform(session.executeAsync(bs), (Function<ResultSet, Boolean>) rs -> rs.one() != null);
+	}
+
+	public ListenableFuture<Boolean> isCommentVisibleByAuthorAsync(UUID authorId, Date createdAt, UUID commentId) {
+		BoundStatement bs = new BoundStatement(SELECT_CONCRETE_COMMENT_BY_AUTHOR);
+		bs.bind(authorId, createdAt, commentId);
+		return Futures.transform(session.executeAsync(bs), (Function<ResultSet, Boolean>) rs -> rs.one() != null);
+	}
+
 	public List<Row> selectPosts() throws BackendException {
+		long start = operationStart();
 		BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS);
 		ResultSet rs = null;
 		try {
@@ -402,42 +1188,52 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a query: select all comments by author. " + e.getMessage() + ".", e);
 		}
+		operationDone(TraceOp.SELECT_POSTS, start, 0, null, null, null, null, null);
 		return rs.all();
 	}
 
 	public void deleteComment(UUID postId, Timestamp createdAt, UUID commentId, UUID authorId) throws BackendException {
-		BoundStatement deleteCommentByPost = new BoundStatement(DELETE_COMMENT_BY_POST);
+		long start = operationStart();
+		List<BoundStatement> deleteCommentByPost = commentByPostStatements(postId, createdAt, commentId,
+				DELETE_COMMENT_BY_POST, DELETE_COMMENT_BY_POST_SHARD, null);
 		BoundStatement deleteCommentByAuthor = new BoundStatement(DELETE_COMMENT_BY_AUTHOR);
 
-		deleteCommentByPost.bind(postId, createdAt, commentId);
 		deleteCommentByAuthor.bind(authorId, createdAt, commentId);
 
 		try {
-			session.execute(deleteCommentByPost);
+			for (BoundStatement bs : deleteCommentByPost) {
+				session.execute(bs);
+			}
 			session.execute(deleteCommentByAuthor);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform delete comment operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Comment with commentId = " + commentId + " and authorId = " + authorId + " and postId = " + postId + " deleted");
+		logger.debug("Comment with commentId = {} and authorId = {} and postId = {} deleted", commentId, authorId, postId);
+		operationDone(TraceOp.DELETE_COMMENT, start, 0, postId, authorId, commentId, createdAt, null);
 	}
 
 	public void editComment(UUID postId, Timestamp createdAt, UUID commentId, UUID authorId, String newCommentContent) throws BackendException {
-		BoundStatement editCommentByPost = new BoundStatement(UPDATE_COMMENT_BY_POST);
+		long start = operationStart();
+		List<BoundStatement> editCommentByPost = commentByPostStatements(postId, createdAt, commentId,
+				UPDATE_COMMENT_BY_POST, UPDATE_COMMENT_BY_POST_SHARD, newCommentContent);
 		BoundStatement editCommentByAuthor = new BoundStatement(UPDATE_COMMENT_BY_AUTHOR);
 
-		editCommentByPost.bind(newCommentContent, postId, createdAt, commentId);
 		editCommentByAuthor.bind(newCommentContent, authorId, createdAt, commentId);
 
 		try {
-			session.execute(editCommentByPost);
+			for (BoundStatement bs : editCommentByPost) {
+				session.execute(bs);
+			}
 			session.execute(editCommentByAuthor);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform edit comment operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Comment edited");
+		logger.debug("Comment edited");
+		operationDone(TraceOp.EDIT_COMMENT, start, newCommentContent.length(), postId, authorId, commentId, createdAt, null);
 	}
 
 	public List<UUID> getLikedPostsByUser(UUID userId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_POSTS_LIKED_BY_USER);
 		bs.bind(userId);
@@ -450,10 +1246,12 @@ public class BackendSession {
 			throw new BackendException("Could not perform a query: select posts liked by user. " + e.getMessage() + ".", e);
 		}
 
+		operationDone(TraceOp.SELECT_LIKED_POSTS_BY_USER, start, 0, null, userId, null, null, null);
 		return rs.all().stream().map(row -> row.getUUID("postId")).collect(Collectors.toList());
 	}
 
 	public boolean userLikedPost(UUID userId, UUID postId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_POST_LIKED_BY_USER);
 		bs.bind(userId, postId);
@@ -465,23 +1263,35 @@ public class BackendSession {
 			throw new BackendException("Could not perform a query: select posts liked by user. " + e.getMessage() + ".", e);
 		}
 
+		operationDone(TraceOp.USER_LIKED_POST, start, 0, postId, userId, null, null, null);
 		return rs.all().size() != 0;
 	}
 
 	public void createLikedPostByUser(UUID postId, UUID userId) throws BackendException {
-		BoundStatement createLikedPostByUserStatement = new BoundStatement(CREATE_LIKED_POST_BY_USER);
-
-		createLikedPostByUserStatement.bind(postId, userId);
+		long start = operationStart();
+		if (journal != null) {
+			journal.append(JournalRecord.likedPostByUser(postId, userId));
+			operationDone(TraceOp.CREATE_LIKED_POST, start, 0, postId, userId, null, null, null);
+			return;
+		}
 
 		try {
-			session.execute(createLikedPostByUserStatement);
+			session.execute(likedPostByUserStatement(postId, userId));
 		} catch (Exception e) {
 			throw new BackendException("Could not perform insert liked post by user operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("New liked post by user created");
+		logger.debug("New liked post by user created");
+		operationDone(TraceOp.CREATE_LIKED_POST, start, 0, postId, userId, null, null, null);
+	}
+
+	private BoundStatement likedPostByUserStatement(UUID postId, UUID userId) {
+		BoundStatement createLikedPostByUserStatement = new BoundStatement(CREATE_LIKED_POST_BY_USER);
+		createLikedPostByUserStatement.bind(postId, userId);
+		return createLikedPostByUserStatement;
 	}
 
 	public void deleteLikedPostByUser(UUID postId, UUID userId) throws BackendException {
+		long start = operationStart();
 		BoundStatement deleteLikedPostByUserStatement = new BoundStatement(DELETE_LIKED_POST_BY_USER);
 
 		deleteLikedPostByUserStatement.bind(userId, postId);
@@ -491,10 +1301,12 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform delete comment operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Liked post by user deleted");
+		logger.debug("Liked post by user deleted");
+		operationDone(TraceOp.DELETE_LIKED_POST, start, 0, postId, userId, null, null, null);
 	}
 
 	public String selectPostLikes(UUID postId) throws BackendException {
+		long start = operationStart();
 		StringBuilder builder = new StringBuilder();
 		BoundStatement bs = new BoundStatement(SELECT_POST_LIKES);
 		bs.bind(postId);
@@ -509,10 +1321,44 @@ public class BackendSession {
 
 		showPostLikes(rs, builder);
 
+		operationDone(TraceOp.SELECT_POST_LIKES, start, 0, postId, null, null, null, null);
 		return builder.toString();
 	}
 
+	/*
+	 * Like counters of many posts in one round trip: the per-post reads run concurrently
+	 * (see MultiGet). Posts that were never liked map to 0.
+	 */
+	public Map<UUID, Long> selectPostLikes(Collection<UUID> postIds) throws BackendException {
+		long start = operationStart();
+		Map<UUID, ResultSet> results;
+		try {
+			results = new MultiGet(session, multiGetMaxInFlight).execute(postIds, postId -> {
+				BoundStatement bs = new BoundStatement(SELECT_POST_LIKES);
+				bs.bind(postId);
+				return bs;
+			});
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select post likes " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_POST_LIKES_BY_IDS, start, postIds.size(), null, null, null, null, null);
+
+		Map<UUID, Long> likes = new HashMap<>();
+		for (Map.Entry<UUID, ResultSet> result : results.entrySet()) {
+			Row row = result.getValue().one();
+			likes.put(result.getKey(), row == null ? 0L : row.getLong("postLikesCounter"));
+		}
+		return likes;
+	}
+
 	public void incrementPostLikes(UUID postId, UUID userId) throws BackendException {
+		long start = operationStart();
+		if (journal != null) {
+			journal.append(JournalRecord.incrementPostLikes(postId, userId));
+			operationDone(TraceOp.INCREMENT_POST_LIKES, start, 0, postId, userId, null, null, null);
+			return;
+		}
+
 		BoundStatement incrementPostLikesStatement = new BoundStatement(INCREMENT_POST_LIKE);
 
 		incrementPostLikesStatement.bind(postId);
@@ -523,10 +1369,12 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform increment post likes operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Post liked");
+		logger.debug("Post liked");
+		operationDone(TraceOp.INCREMENT_POST_LIKES, start, 0, postId, userId, null, null, null);
 	}
 
 	public void decrementPostLikes(UUID postId) throws BackendException {
+		long start = operationStart();
 		BoundStatement decrementPostLikesStatement = new BoundStatement(DECREMENT_POST_LIKE);
 
 		decrementPostLikesStatement.bind(postId);
@@ -536,10 +1384,12 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform decrement post likes operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("Remove post liked");
+		logger.debug("Remove post liked");
+		operationDone(TraceOp.DECREMENT_POST_LIKES, start, 0, postId, null, null, null, null);
 	}
 
 	public void deletePostLikes(UUID postId) throws BackendException {
+		long start = operationStart();
 		BoundStatement deletePostLikesStatement = new BoundStatement(DELETE_POST_LIKES);
 
 		deletePostLikesStatement.bind(postId);
@@ -549,7 +1399,141 @@ public class BackendSession {
 		} catch (Exception e) {
 			throw new BackendException("Could not perform delete post likes operation. " + e.getMessage() + ".", e);
 		}
-		logger.info("post likes deleted");
+		logger.debug("post likes deleted");
+		operationDone(TraceOp.DELETE_POST_LIKES, start, 0, postId, null, null, null, null);
+	}
+
+	/*
+	 * Global "newest posts" feed: the newest `limit` posts over every category any client
+	 * has posted to, as listed in the categories table.
+	 */
+	public Timeline selectNewestPostsTimeline(int limit) throws BackendException {
+		return selectTimelineByCategories(selectCategories(), limit);
+	}
+
+	public List<String> selectCategories() throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_CATEGORIES);
+		bs.bind(CATEGORIES_BUCKET);
+
+		List<String> categories = new ArrayList<>();
+		try {
+			for (Row row : session.execute(bs)) {
+				categories.add(row.getString("categoryName"));
+			}
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select categories. " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_CATEGORIES, start, 0, null, null, null, null, null);
+		return categories;
+	}
+
+	public Timeline selectTimelineByCategories(Collection<String> categoryNames, int limit) throws BackendException {
+		checkTimelineLimit(limit);
+		long start = operationStart();
+		TimelineMerge merge = new TimelineMerge(session, limit);
+		for (String categoryName : categoryNames) {
+			BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_CATEGORY);
+			bs.bind(categoryName);
+			merge.addSource(categoryName, bs);
+		}
+		Timeline timeline;
+		try {
+			timeline = merge.execute();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select timeline by categories. " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_TIMELINE_BY_CATEGORIES, start, categoryNames.size(), null, null, null, null, null);
+		return timeline;
+	}
+
+	public Timeline selectTimelineByAuthors(Collection<UUID> authorIds, int limit) throws BackendException {
+		checkTimelineLimit(limit);
+		long start = operationStart();
+		TimelineMerge merge = new TimelineMerge(session, limit);
+		for (UUID authorId : authorIds) {
+			BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_AUTHOR);
+			bs.bind(authorId);
+			merge.addSource(authorId.toString(), bs);
+		}
+		Timeline timeline;
+		try {
+			timeline = merge.execute();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: select timeline by authors. " + e.getMessage() + ".", e);
+		}
+		operationDone(TraceOp.SELECT_TIMELINE_BY_AUTHORS, start, authorIds.size(), null, null, null, null, null);
+		return timeline;
+	}
+
+	private static void checkTimelineLimit(int limit) throws BackendException {
+		if (limit < 0) {
+			throw new BackendException("Timeline limit must not be negative, got " + limit + ".");
+		}
+	}
+
+	/*
+	 * Cursor paging for the list reads below. The cursor is the driver's PagingState, so
+	 * Cassandra resumes right after the last returned row and deep pages cost the same as
+	 * the first one. A cursor is only valid for the query and key it was issued for.
+	 * Listeners see the page size as the payload size.
+	 */
+	public Page<Row> selectPostsPageByAuthor(UUID authorId, int pageSize, String cursor) throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_AUTHOR);
+		bs.bind(authorId);
+		Page<Row> page = selectPage(bs, pageSize, cursor, "select posts by author");
+		operationDone(TraceOp.SELECT_POSTS_PAGE_BY_AUTHOR, start, pageSize, null, authorId, null, null, null);
+		return page;
+	}
+
+	public Page<Row> selectPostsPageByCategory(String categoryName, int pageSize, String cursor) throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_ALL_POSTS_BY_CATEGORY);
+		bs.bind(categoryName);
+		Page<Row> page = selectPage(bs, pageSize, cursor, "select posts by category");
+		operationDone(TraceOp.SELECT_POSTS_PAGE_BY_CATEGORY, start, pageSize, null, null, null, null, categoryName);
+		return page;
+	}
+
+	public Page<Row> selectCommentsPageByAuthor(UUID authorId, int pageSize, String cursor) throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_COMMENTS_BY_AUTHOR);
+		bs.bind(authorId);
+		Page<Row> page = selectPage(bs, pageSize, cursor, "select comments by author");
+		operationDone(TraceOp.SELECT_COMMENTS_PAGE_BY_AUTHOR, start, pageSize, null, authorId, null, null, null);
+		return page;
+	}
+
+	public Page<UUID> selectLikedPostsPageByUser(UUID userId, int pageSize, String cursor) throws BackendException {
+		long start = operationStart();
+		BoundStatement bs = new BoundStatement(SELECT_POSTS_LIKED_BY_USER);
+		bs.bind(userId);
+		Page<Row> page = selectPage(bs, pageSize, cursor, "select posts liked by user");
+		operationDone(TraceOp.SELECT_LIKED_POSTS_PAGE_BY_USER, start, pageSize, null, userId, null, null, null);
+		return new Page<>(page.getItems().stream().map(row -> row.getUUID("postId")).collect(Collectors.toList()), page.getNextCursor());
+	}
+
+	private Page<Row> selectPage(BoundStatement bs, int pageSize, String cursor, String operation) throws BackendException {
+		bs.setFetchSize(pageSize);
+		ResultSet rs = null;
+		try {
+			if (cursor != null) {
+				bs.setPagingState(PagingState.fromString(cursor));
+			}
+			rs = session.execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a query: " + operation + ". " + e.getMessage() + ".", e);
+		}
+
+		// only consume the fetched page, iterating further would make the driver fetch the next one
+		int available = rs.getAvailableWithoutFetching();
+		List<Row> rows = new ArrayList<>(available);
+		for (int i = 0; i < available; i++) {
+			rows.add(rs.one());
+		}
+		PagingState next = rs.getExecutionInfo().getPagingState();
+		return new Page<>(rows, next == null ? null : next.toString());
 	}
 
 	private void showPostLikes(ResultSet rs, StringBuilder builder) {
@@ -583,7 +1567,7 @@ public class BackendSession {
 		}
 	}
 
-	private void showCommentsByPost(ResultSet rs, StringBuilder builder) {
+	private void showCommentsByPost(Iterable<Row> rs, StringBuilder builder) {
 		for (Row row : rs) {
 			UUID postId = row.getUUID("postId");
 			UUID authorId = row.getUUID("authorId");
@@ -608,8 +1592,15 @@ public class BackendSession {
 
 
 
-	protected void finalize() {
+	/* Closes the journal and the cluster connection; the session is unusable afterwards. */
+	public void close() {
 		try {
+			if (auditor != null) {
+				auditor.close();
+			}
+			if (journal != null) {
+				journal.close();
+			}
 			if (session != null) {
 				session.getCluster().close();
 			}
@@ -618,4 +1609,8 @@ public class BackendSession {
 		}
 	}
 
+	protected void finalize() {
+		close();
+	}
+
 }
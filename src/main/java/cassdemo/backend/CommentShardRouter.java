@@ -0,0 +1,109 @@
+package cassdemo.backend;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Decides which comments_by_post layout a post uses.
+ *
+ * Every post starts in the plain comments_by_post partition. Once this client has written
+ * more than `threshold` comments to a post, the post is promoted (once, cluster-wide, via the
+ * comment_shards table) and all later comments go to comments_by_post_shard partitions
+ * keyed by (postId, shard). The shard is derived from the commentId, so delete and edit
+ * can find the comment again without reading it first.
+ */
+class CommentShardRouter {
+
+	private static final int MAX_TRACKED_POSTS = 100_000;
+
+	private final int threshold;
+	private final int shardCount;
+	private final long layoutTtlMillis;
+
+	private final ConcurrentMap<UUID, AtomicInteger> writeCounts = new ConcurrentHashMap<>();
+	private final ConcurrentMap<UUID, ShardLayout> layouts = new ConcurrentHashMap<>();
+
+	CommentShardRouter(int threshold, int shardCount, long layoutTtlMillis) {
+		this.threshold = threshold;
+		this.shardCount = shardCount;
+		this.layoutTtlMillis = layoutTtlMillis;
+	}
+
+	int getShardCount() {
+		return shardCount;
+	}
+
+	long getLayoutTtlMillis() {
+		return layoutTtlMillis;
+	}
+
+	/*
+	 * Returns the cached layout of the post, or null when it has to be (re)loaded.
+	 * Sharded layouts never change, so only unsharded ones expire.
+	 */
+	ShardLayout cachedLayout(UUID postId) {
+		ShardLayout layout = layouts.get(postId);
+		if (layout == null) {
+			return null;
+		}
+		if (!layout.isSharded() && System.currentTimeMillis() - layout.loadedAt > layoutTtlMillis) {
+			layouts.remove(postId, layout);
+			return null;
+		}
+		return layout;
+	}
+
+	void rememberLayout(UUID postId, ShardLayout layout) {
+		if (layouts.size() >= MAX_TRACKED_POSTS) {
+			layouts.clear();
+		}
+		layouts.put(postId, layout);
+		if (layout.isSharded()) {
+			writeCounts.remove(postId);
+		}
+	}
+
+	/*
+	 * Counts a comment written to an unsharded post. Returns true for every write from the
+	 * promotion threshold on, until the post is remembered as sharded, so a failed
+	 * promotion is retried.
+	 */
+	boolean recordUnshardedWrite(UUID postId) {
+		if (threshold <= 0) {
+			return false;
+		}
+		if (writeCounts.size() >= MAX_TRACKED_POSTS) {
+			writeCounts.clear();
+		}
+		AtomicInteger count = writeCounts.computeIfAbsent(postId, id -> new AtomicInteger());
+		return count.incrementAndGet() >= threshold;
+	}
+
+	void clear() {
+		writeCounts.clear();
+		layouts.clear();
+	}
+
+	static int shardFor(UUID commentId, int shards) {
+		return Math.floorMod(commentId.hashCode(), shards);
+	}
+
+	static class ShardLayout {
+		final int shardCount;
+		final Date promotedAt;
+		final long loadedAt;
+
+		ShardLayout(int shardCount, Date promotedAt) {
+			this.shardCount = shardCount;
+			this.promotedAt = promotedAt;
+			this.loadedAt = System.currentTimeMillis();
+		}
+
+		boolean isSharded() {
+			return shardCount > 0;
+		}
+	}
+}
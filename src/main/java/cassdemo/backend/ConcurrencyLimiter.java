@@ -0,0 +1,245 @@
+package cassdemo.backend;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Adaptive in-flight limit, gradient style: the limit follows the ratio between the long
+ * term RTT and the RTT just measured. While requests come back as fast as usual the limit
+ * grows by about sqrt(limit) per sample; once RTT climbs (the cluster starts queueing) the
+ * limit shrinks proportionally, and a timeout cuts it multiplicatively. Requests over the
+ * limit queue up to queueTimeout for a slot, or are rejected at once when queueTimeout is 0.
+ * Nobody blocks while queued: acquire() returns a future, and release() hands the freed
+ * slot to the oldest waiter.
+ */
+public class ConcurrencyLimiter {
+
+	private static final double SMOOTHING = 0.2;
+	private static final double TIMEOUT_BACKOFF = 0.9;
+	private static final double LONG_RTT_WEIGHT = 0.01;
+
+	private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "limiter-timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long queueTimeoutNanos;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+	private double limit;
+	private double longRttNanos;
+	private int inFlight;
+
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong queueWaitNanos = new AtomicLong();
+
+	public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long queueTimeoutMillis) {
+		this.name = name;
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+	}
+
+	/*
+	 * Takes a slot. The future completes with the time the slot was taken, to be passed back
+	 * to release(), or fails with LimiterRejectedException when no slot freed up within
+	 * queueTimeout. Cancelling it gives up the place in the queue.
+	 */
+	public ListenableFuture<Long> acquire() {
+		long start = System.nanoTime();
+		Waiter waiter;
+		lock.lock();
+		try {
+			if (waiters.isEmpty() && inFlight < (int) limit) {
+				inFlight++;
+				long admittedAt = System.nanoTime();
+				record(start, admittedAt);
+				return Futures.immediateFuture(admittedAt);
+			}
+			if (queueTimeoutNanos <= 0) {
+				rejected.incrementAndGet();
+				return Futures.immediateFailedFuture(rejection());
+			}
+			waiter = new Waiter(start);
+			waiters.addLast(waiter);
+		} finally {
+			lock.unlock();
+		}
+		waiter.timeout = TIMEOUTS.schedule(() -> expire(waiter), queueTimeoutNanos, TimeUnit.NANOSECONDS);
+		return waiter.future;
+	}
+
+	/*
+	 * Returns the slot and feeds the request's outcome into the limit. `dropped` marks
+	 * timeouts and overload errors, which are the congestion signal.
+	 */
+	public void release(long admittedAt, boolean dropped) {
+		long rtt = System.nanoTime() - admittedAt;
+		List<Waiter> next;
+		lock.lock();
+		try {
+			int inFlightAtRelease = inFlight--;
+			if (dropped) {
+				timeouts.incrementAndGet();
+				limit = Math.max(minLimit, limit * TIMEOUT_BACKOFF);
+			} else if (longRttNanos == 0) {
+				longRttNanos = rtt;
+			} else {
+				longRttNanos = longRttNanos * (1 - LONG_RTT_WEIGHT) + rtt * LONG_RTT_WEIGHT;
+				// don't grow the limit while the application isn't even using half of it
+				if (inFlightAtRelease >= limit / 2 || rtt > longRttNanos) {
+					double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / rtt));
+					double newLimit = limit * gradient + Math.sqrt(limit);
+					limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+				}
+			}
+			next = dequeueAdmitted();
+		} finally {
+			lock.unlock();
+		}
+		admit(next);
+	}
+
+	/* Takes the waiters that fit under the limit now. Called with the lock held. */
+	private List<Waiter> dequeueAdmitted() {
+		List<Waiter> next = new ArrayList<>(0);
+		while (!waiters.isEmpty() && inFlight < (int) limit) {
+			next.add(waiters.pollFirst());
+			inFlight++;
+		}
+		return next;
+	}
+
+	/* Completes the futures outside the lock, their callbacks send the requests. */
+	private void admit(List<Waiter> next) {
+		for (Waiter waiter : next) {
+			ScheduledFuture<?> timeout = waiter.timeout;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			long admittedAt = System.nanoTime();
+			if (waiter.future.set(admittedAt)) {
+				record(waiter.start, admittedAt);
+			} else {
+				// cancelled by the caller meanwhile, pass the slot on without a measurement
+				List<Waiter> others;
+				lock.lock();
+				try {
+					inFlight--;
+					others = dequeueAdmitted();
+				} finally {
+					lock.unlock();
+				}
+				admit(others);
+			}
+		}
+	}
+
+	private void expire(Waiter waiter) {
+		lock.lock();
+		try {
+			if (!waiters.remove(waiter)) {
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (waiter.future.setException(rejection())) {
+			rejected.incrementAndGet();
+		}
+	}
+
+	private void record(long start, long admittedAt) {
+		admitted.incrementAndGet();
+		queueWaitNanos.addAndGet(admittedAt - start);
+	}
+
+	private LimiterRejectedException rejection() {
+		return new LimiterRejectedException(name + " limit of " + getLimit() + " in-flight requests reached");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getQueued() {
+		lock.lock();
+		try {
+			return waiters.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public double getAverageQueueDelayMicros() {
+		long count = admitted.get();
+		return count == 0 ? 0 : queueWaitNanos.get() / 1000.0 / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: limit=%d inFlight=%d queued=%d admitted=%d rejected=%d timeouts=%d avgQueueDelay=%.1fus",
+				name, getLimit(), getInFlight(), getQueued(), getAdmitted(), getRejected(), getTimeouts(), getAverageQueueDelayMicros());
+	}
+
+	private static class Waiter {
+		final long start;
+		final SettableFuture<Long> future = SettableFuture.create();
+		volatile ScheduledFuture<?> timeout;
+
+		Waiter(long start) {
+			this.start = start;
+		}
+	}
+}
@@ -0,0 +1,726 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TypeCodec;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Background auditor for the denormalized copies: posts_by_author against posts_by_category,
+ * and comments_by_post (including the shard table) against comments_by_author.
+ *
+ * The two copies of a pair are partitioned by different keys, so the auditor keeps one
+ * MerkleTree per copy's token space. Each copy is scanned once per cycle, one token slice
+ * per step, and every row is hashed into both trees: at the leaf of its own partition key
+ * token and at the leaf of the token the other copy's partition key would have (computed
+ * here, Murmur3Partitioner only). After both scans, the leaves that differ are drilled into:
+ * the copy that is partitioned by that space is re-read for just that slice, each row is
+ * looked up in the other copy, and rows that are missing or different there get repaired.
+ *
+ *   posts     posts_by_id decides when it holds the post: a copy that doesn't match it
+ *             (written with another createdAt) is deleted, both copies are rewritten from it.
+ *             Posts written before posts_by_id existed have no row there, and an edit of such
+ *             a post leaves one without createdAt. Then a complete copy decides: both copies
+ *             and posts_by_id are written from it. A copy left only by an edit racing a delete
+ *             is deleted. Two complete copies that differ are left alone and counted as
+ *             unresolved.
+ *   comments  comments_by_post decides, it is written first and deleted first: a missing
+ *             comments_by_author copy is written, one without a comments_by_post copy is
+ *             deleted.
+ *
+ * Rows read are throttled to rowsPerSecond. Rows with a createdAt within graceMillis of the
+ * cycle start are ignored, since their two-statement write may still be in flight. Progress
+ * (position and the trees) is checkpointed in `directory`, so a restarted auditor resumes
+ * where it stopped.
+ */
+public class DivergenceAuditor implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(DivergenceAuditor.class);
+
+	private static final String CHECKPOINT = "audit.checkpoint";
+	private static final int CHECKPOINT_VERSION = 1;
+	private static final int FETCH_SIZE = 500;
+	private static final long RETRY_BACKOFF_MILLIS = 1000;
+	private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+	private static final int SCAN_A = 0;
+	private static final int SCAN_B = 1;
+	private static final int DRILL_A = 2;
+	private static final int DRILL_B = 3;
+	private static final String[] PHASES = {"scan", "scan", "drill", "drill"};
+
+	private final Session session;
+	private final File directory;
+	private final int depth;
+	private final long graceMillis;
+	private final long cyclePauseMillis;
+	private final RateLimiter limiter;
+	private final Pair[] pairs;
+
+	// audit position, only touched by the auditor thread
+	private long cycle;
+	private long cycleStart;
+	private int pair;
+	private int phase;
+	private int position;
+	private MerkleTree[] trees;
+	private List<Integer> drillLeaves;
+	private long lastCheckpoint;
+
+	private final Thread auditor;
+	private volatile boolean running = true;
+	private volatile String status = "starting";
+
+	private final AtomicLong cycles = new AtomicLong();
+	private final AtomicLong scanned = new AtomicLong();
+	private final AtomicLong differingLeaves = new AtomicLong();
+	private final AtomicLong divergent = new AtomicLong();
+	private final AtomicLong repaired = new AtomicLong();
+	private final AtomicLong unresolved = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	private PreparedStatement scanPostsByAuthor;
+	private PreparedStatement scanPostsByCategory;
+	private PreparedStatement getPostByAuthor;
+	private PreparedStatement getPostByCategory;
+	private PreparedStatement getPostById;
+	private PreparedStatement putPostByAuthor;
+	private PreparedStatement putPostByCategory;
+	private PreparedStatement putPostById;
+	private PreparedStatement deletePostByAuthor;
+	private PreparedStatement deletePostByCategory;
+
+	private PreparedStatement scanCommentsByPost;
+	private PreparedStatement scanCommentsByPostShard;
+	private PreparedStatement scanCommentShards;
+	private PreparedStatement getCommentShard;
+	private PreparedStatement getCommentShards;
+	private PreparedStatement getCommentByPost;
+	private PreparedStatement getCommentByPostShard;
+	private PreparedStatement scanCommentsByAuthor;
+	private PreparedStatement getCommentByAuthor;
+	private PreparedStatement putCommentByAuthor;
+	private PreparedStatement deleteCommentByAuthor;
+
+	/* depth sets both the number of token slices walked per scan and the tree leaves: 2^depth. */
+	DivergenceAuditor(Session session, File directory, int depth, double rowsPerSecond, long graceMillis, long cyclePauseMillis) throws IOException {
+		String partitioner = session.getCluster().getMetadata().getPartitioner();
+		if (partitioner == null || !partitioner.endsWith("Murmur3Partitioner")) {
+			throw new IOException("The divergence auditor needs the Murmur3Partitioner, the cluster uses " + partitioner);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create audit directory " + directory);
+		}
+		this.session = session;
+		this.directory = directory;
+		this.depth = depth;
+		this.graceMillis = graceMillis;
+		this.cyclePauseMillis = cyclePauseMillis;
+		this.limiter = RateLimiter.create(rowsPerSecond);
+		prepareStatements();
+		this.pairs = new Pair[]{new PostPair(), new CommentPair()};
+
+		trees = newTrees();
+		cycleStart = System.currentTimeMillis();
+		recover();
+
+		auditor = new Thread(this::audit, "divergence-auditor");
+		auditor.setDaemon(true);
+		auditor.start();
+	}
+
+	private void prepareStatements() {
+		String posts = "SELECT postId, postContent, createdAt, authorId, authorName, categoryName";
+		scanPostsByAuthor = session.prepare(posts + " FROM posts_by_author WHERE token(authorId) > ? AND token(authorId) <= ?");
+		scanPostsByCategory = session.prepare(posts + " FROM posts_by_category WHERE token(categoryName) > ? AND token(categoryName) <= ?");
+		getPostByAuthor = session.prepare(posts + " FROM posts_by_author WHERE authorId = ? AND createdAt = ? AND postId = ?");
+		getPostByCategory = session.prepare(posts + " FROM posts_by_category WHERE categoryName = ? AND createdAt = ? AND postId = ?");
+		getPostById = session.prepare(posts + " FROM posts_by_id WHERE postId = ?");
+		putPostByAuthor = session.prepare("INSERT INTO posts_by_author (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)");
+		putPostByCategory = session.prepare("INSERT INTO posts_by_category (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)");
+		putPostById = session.prepare("INSERT INTO posts_by_id (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?)");
+		deletePostByAuthor = session.prepare("DELETE FROM posts_by_author WHERE authorId = ? AND createdAt = ? AND postId = ?");
+		deletePostByCategory = session.prepare("DELETE FROM posts_by_category WHERE categoryName = ? AND createdAt = ? AND postId = ?");
+
+		String comments = "SELECT postId, authorId, createdAt, commentId, commentContent";
+		scanCommentsByPost = session.prepare(comments + " FROM comments_by_post WHERE token(postId) > ? AND token(postId) <= ?");
+		scanCommentsByPostShard = session.prepare(comments + " FROM comments_by_post_shard WHERE token(postId, shard) > ? AND token(postId, shard) <= ?");
+		scanCommentShards = session.prepare("SELECT postId, shardCount FROM comment_shards WHERE token(postId) > ? AND token(postId) <= ?");
+		getCommentShard = session.prepare(comments + " FROM comments_by_post_shard WHERE postId = ? AND shard = ?");
+		getCommentShards = session.prepare("SELECT shardCount FROM comment_shards WHERE postId = ?");
+		getCommentByPost = session.prepare(comments + " FROM comments_by_post WHERE postId = ? AND createdAt = ? AND commentId = ?");
+		getCommentByPostShard = session.prepare(comments + " FROM comments_by_post_shard WHERE postId = ? AND shard = ? AND createdAt = ? AND commentId = ?");
+		scanCommentsByAuthor = session.prepare(comments + " FROM comments_by_author WHERE token(authorId) > ? AND token(authorId) <= ?");
+		getCommentByAuthor = session.prepare(comments + " FROM comments_by_author WHERE authorId = ? AND createdAt = ? AND commentId = ?");
+		putCommentByAuthor = session.prepare("INSERT INTO comments_by_author (postId, authorId, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?)");
+		deleteCommentByAuthor = session.prepare("DELETE FROM comments_by_author WHERE authorId = ? AND createdAt = ? AND commentId = ?");
+	}
+
+	private MerkleTree[] newTrees() {
+		return new MerkleTree[]{new MerkleTree(depth), new MerkleTree(depth)};
+	}
+
+	private void audit() {
+		while (running) {
+			try {
+				if (!step()) {
+					status = "idle";
+					Thread.sleep(cyclePauseMillis);
+					cycleStart = System.currentTimeMillis();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (!running) {
+					return;
+				}
+				failures.incrementAndGet();
+				logger.warn("Divergence audit step failed, retrying: " + e.getMessage());
+				try {
+					Thread.sleep(RETRY_BACKOFF_MILLIS);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}
+	}
+
+	/* Does one slice or one leaf of work; false once the cycle is complete. */
+	private boolean step() throws IOException {
+		Pair current = pairs[pair];
+		status = String.format("%s %s %s %d", current.name, PHASES[phase], phase % 2 == 0 ? current.a.table : current.b.table, position);
+		int leafCount = 1 << depth;
+		if (phase == SCAN_A || phase == SCAN_B) {
+			Copy copy = phase == SCAN_A ? current.a : current.b;
+			for (AuditRow row : copy.scan(position)) {
+				if (!include(row)) {
+					continue;
+				}
+				trees[0].add(copy.side, leaf(current.a.spaceToken(row)), row.digest);
+				trees[1].add(copy.side, leaf(current.b.spaceToken(row)), row.digest);
+			}
+			if (++position == leafCount) {
+				phase++;
+				position = 0;
+			}
+		} else {
+			Copy copy = phase == DRILL_A ? current.a : current.b;
+			if (drillLeaves == null) {
+				drillLeaves = trees[copy.side].differingLeaves();
+				differingLeaves.addAndGet(drillLeaves.size());
+			}
+			if (position < drillLeaves.size()) {
+				drill(current, copy, drillLeaves.get(position++));
+			}
+			if (position >= drillLeaves.size()) {
+				drillLeaves = null;
+				position = 0;
+				if (++phase > DRILL_B) {
+					phase = SCAN_A;
+					trees = newTrees();
+					if (++pair == pairs.length) {
+						pair = 0;
+						cycle++;
+						cycles.incrementAndGet();
+						writeCheckpoint();
+						return false;
+					}
+				}
+			}
+		}
+		if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL_MILLIS) {
+			writeCheckpoint();
+		}
+		return true;
+	}
+
+	private void drill(Pair current, Copy copy, int leaf) {
+		Copy other = copy == current.a ? current.b : current.a;
+		for (AuditRow row : copy.inSpace(leaf)) {
+			if (!include(row)) {
+				continue;
+			}
+			AuditRow counterpart = other.find(row);
+			if (counterpart == null || counterpart.digest != row.digest) {
+				divergent.incrementAndGet();
+				repaired.addAndGet(current.repair(copy, row, counterpart));
+			}
+		}
+	}
+
+	private boolean include(AuditRow row) {
+		return row.createdAt.getTime() <= cycleStart - graceMillis;
+	}
+
+	/* Leaf, and token slice, holding a Murmur3 token: slice i covers (lower(i), lower(i + 1)]. */
+	private int leaf(long token) {
+		return (int) (((token ^ Long.MIN_VALUE) - 1) >>> (64 - depth));
+	}
+
+	private long lowerBound(int slice) {
+		return Long.MIN_VALUE + ((long) slice << (64 - depth));
+	}
+
+	private long upperBound(int slice) {
+		return slice == (1 << depth) - 1 ? Long.MAX_VALUE : lowerBound(slice + 1);
+	}
+
+	/* A post row left by an edit lacks the other copy's key, it goes to the last leaf. */
+	private long token(ByteBuffer partitionKey) {
+		if (partitionKey == null) {
+			return Long.MIN_VALUE;
+		}
+		return (Long) session.getCluster().getMetadata().newToken(partitionKey).getValue();
+	}
+
+	private static ByteBuffer key(UUID value) {
+		return TypeCodec.uuid().serialize(value, ProtocolVersion.NEWEST_SUPPORTED);
+	}
+
+	private static ByteBuffer key(String value) {
+		return TypeCodec.varchar().serialize(value, ProtocolVersion.NEWEST_SUPPORTED);
+	}
+
+	/* Reads the rows of a query, paged and throttled. */
+	private List<Row> read(Statement statement) {
+		statement.setFetchSize(FETCH_SIZE);
+		List<Row> rows = new ArrayList<>();
+		for (Row row : session.execute(statement)) {
+			if (!running) {
+				// abandon the slice, it is redone after a restart
+				throw new IllegalStateException("Divergence auditor stopped");
+			}
+			limiter.acquire();
+			rows.add(row);
+		}
+		scanned.addAndGet(rows.size());
+		return rows;
+	}
+
+	private Row readOne(BoundStatement statement) {
+		limiter.acquire();
+		return session.execute(statement).one();
+	}
+
+	private BoundStatement slice(PreparedStatement statement, int slice) {
+		return statement.bind(lowerBound(slice), upperBound(slice));
+	}
+
+	private void recover() throws IOException {
+		File checkpoint = new File(directory, CHECKPOINT);
+		if (!checkpoint.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint))) {
+			if (in.readInt() != CHECKPOINT_VERSION || in.readInt() != depth) {
+				logger.info("Audit checkpoint was written with other settings, starting a new cycle");
+				return;
+			}
+			cycle = in.readLong();
+			cycleStart = in.readLong();
+			pair = in.readInt();
+			phase = in.readInt();
+			position = in.readInt();
+			for (MerkleTree tree : trees) {
+				tree.read(in);
+			}
+		}
+		logger.info("Resuming divergence audit cycle " + cycle + " at " + pairs[pair].name + " " + PHASES[phase] + " " + position);
+	}
+
+	private void writeCheckpoint() throws IOException {
+		File temp = new File(directory, CHECKPOINT + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(depth);
+			out.writeLong(cycle);
+			out.writeLong(cycleStart);
+			out.writeInt(pair);
+			out.writeInt(phase);
+			out.writeInt(position);
+			for (MerkleTree tree : trees) {
+				tree.write(out);
+			}
+		}
+		Files.move(temp.toPath(), new File(directory, CHECKPOINT).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	public long getCycles() {
+		return cycles.get();
+	}
+
+	public long getScanned() {
+		return scanned.get();
+	}
+
+	public long getDifferingLeaves() {
+		return differingLeaves.get();
+	}
+
+	public long getDivergent() {
+		return divergent.get();
+	}
+
+	public long getRepaired() {
+		return repaired.get();
+	}
+
+	/* Divergent posts with two complete copies and no posts_by_id row to choose between them. */
+	public long getUnresolved() {
+		return unresolved.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/*
+	 * Stops the auditor. The position is checkpointed, so the next auditor continues the
+	 * cycle rather than starting over.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		auditor.interrupt();
+		try {
+			auditor.join();
+		} catch (InterruptedException e) {
+			// the thread may still touch the trees, keep the last periodic checkpoint
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			writeCheckpoint();
+		} catch (IOException e) {
+			logger.warn("Could not write the audit checkpoint: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("audit: %s cycles=%d scanned=%d differingLeaves=%d divergent=%d repaired=%d unresolved=%d failures=%d",
+				status, getCycles(), getScanned(), getDifferingLeaves(), getDivergent(), getRepaired(), getUnresolved(), getFailures());
+	}
+
+	/* A row of either copy, reduced to the columns both copies share. */
+	private static class AuditRow {
+		final UUID postId;
+		final UUID commentId;
+		final UUID authorId;
+		final String authorName;
+		final String categoryName;
+		final Date createdAt;
+		final String content;
+		final long digest;
+
+		AuditRow(UUID postId, UUID commentId, UUID authorId, String authorName, String categoryName, Date createdAt, String content) {
+			this.postId = postId;
+			this.commentId = commentId;
+			this.authorId = authorId;
+			this.authorName = authorName;
+			this.categoryName = categoryName;
+			this.createdAt = createdAt;
+			this.content = content;
+			Hasher hasher = Hashing.murmur3_128().newHasher();
+			putUuid(hasher, postId);
+			putUuid(hasher, commentId);
+			putUuid(hasher, authorId);
+			putString(hasher, authorName);
+			putString(hasher, categoryName);
+			hasher.putLong(createdAt.getTime());
+			putString(hasher, content);
+			this.digest = hasher.hash().asLong();
+		}
+
+		static AuditRow post(Row row) {
+			return new AuditRow(row.getUUID("postId"), null, row.getUUID("authorId"), row.getString("authorName"),
+					row.getString("categoryName"), row.getTimestamp("createdAt"), row.getString("postContent"));
+		}
+
+		static AuditRow comment(Row row) {
+			return new AuditRow(row.getUUID("postId"), row.getUUID("commentId"), row.getUUID("authorId"), null,
+					null, row.getTimestamp("createdAt"), row.getString("commentContent"));
+		}
+
+		private static void putUuid(Hasher hasher, UUID value) {
+			if (value == null) {
+				hasher.putByte((byte) 0);
+			} else {
+				hasher.putByte((byte) 1).putLong(value.getMostSignificantBits()).putLong(value.getLeastSignificantBits());
+			}
+		}
+
+		private static void putString(Hasher hasher, String value) {
+			if (value == null) {
+				hasher.putInt(-1);
+			} else {
+				hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+	/* One copy of a pair; `side` is its slot in the trees and the index of its token space. */
+	private abstract class Copy {
+		final String table;
+		final int side;
+
+		Copy(String table, int side) {
+			this.table = table;
+			this.side = side;
+		}
+
+		/* Token of this copy's partition key for a row of either copy. */
+		abstract long spaceToken(AuditRow row);
+
+		/* Rows stored in token slice `slice` of this copy's tables. */
+		abstract List<AuditRow> scan(int slice);
+
+		/* Rows of this copy whose spaceToken falls in `leaf`. */
+		List<AuditRow> inSpace(int leaf) {
+			return scan(leaf);
+		}
+
+		/* This copy of the row, null when it has none. */
+		abstract AuditRow find(AuditRow row);
+	}
+
+	private abstract static class Pair {
+		final String name;
+		Copy a;
+		Copy b;
+
+		Pair(String name) {
+			this.name = name;
+		}
+
+		/*
+		 * Fixes the divergence between `row`, read from `copy`, and its counterpart in the
+		 * other copy (null when missing). Returns the number of mutations written.
+		 */
+		abstract int repair(Copy copy, AuditRow row, AuditRow counterpart);
+	}
+
+	private class PostPair extends Pair {
+
+		PostPair() {
+			super("posts");
+			a = new Copy("posts_by_author", 0) {
+				@Override
+				long spaceToken(AuditRow row) {
+					return token(key(row.authorId));
+				}
+
+				@Override
+				List<AuditRow> scan(int slice) {
+					return posts(read(slice(scanPostsByAuthor, slice)));
+				}
+
+				@Override
+				AuditRow find(AuditRow row) {
+					if (row.authorId == null) {
+						return null;
+					}
+					Row found = readOne(getPostByAuthor.bind(row.authorId, row.createdAt, row.postId));
+					return found == null ? null : AuditRow.post(found);
+				}
+			};
+			b = new Copy("posts_by_category", 1) {
+				@Override
+				long spaceToken(AuditRow row) {
+					return token(key(row.categoryName));
+				}
+
+				@Override
+				List<AuditRow> scan(int slice) {
+					return posts(read(slice(scanPostsByCategory, slice)));
+				}
+
+				@Override
+				AuditRow find(AuditRow row) {
+					if (row.categoryName == null) {
+						return null;
+					}
+					Row found = readOne(getPostByCategory.bind(row.categoryName, row.createdAt, row.postId));
+					return found == null ? null : AuditRow.post(found);
+				}
+			};
+		}
+
+		private List<AuditRow> posts(List<Row> rows) {
+			List<AuditRow> posts = new ArrayList<>(rows.size());
+			for (Row row : rows) {
+				posts.add(AuditRow.post(row));
+			}
+			return posts;
+		}
+
+		@Override
+		int repair(Copy copy, AuditRow row, AuditRow counterpart) {
+			Row byId = readOne(getPostById.bind(row.postId));
+			if (byId != null && !byId.isNull("createdAt")) {
+				return repairFrom(AuditRow.post(byId), copy, row);
+			}
+
+			// no posts_by_id row to go by, a complete copy is the post
+			boolean rowComplete = complete(row);
+			boolean counterpartComplete = counterpart != null && complete(counterpart);
+			if (rowComplete && counterpartComplete) {
+				unresolved.incrementAndGet();
+				logger.warn("Could not repair post " + row.postId + ": its copies differ and posts_by_id has no row for it");
+				return 0;
+			}
+			if (!rowComplete && !counterpartComplete) {
+				// only edits wrote these rows, the post was deleted under them
+				deleteCopy(copy, row);
+				logger.info("Deleted post " + row.postId + " left in " + copy.table + " by an edit");
+				return 1;
+			}
+			AuditRow post = rowComplete ? row : counterpart;
+			Object[] values = {post.postId, post.content, post.createdAt, post.authorId, post.authorName, post.categoryName};
+			session.execute(putPostByAuthor.bind(values));
+			session.execute(putPostByCategory.bind(values));
+			session.execute(putPostById.bind(values));
+			logger.info("Repaired post " + row.postId + " found in " + copy.table + ", posts_by_id written");
+			return 3;
+		}
+
+		private int repairFrom(AuditRow post, Copy copy, AuditRow row) {
+			int mutations = 0;
+			boolean current = post.createdAt.equals(row.createdAt)
+					&& (copy == a ? Objects.equals(post.authorId, row.authorId) : Objects.equals(post.categoryName, row.categoryName));
+			if (!current) {
+				deleteCopy(copy, row);
+				mutations++;
+			}
+			Object[] values = {post.postId, post.content, post.createdAt, post.authorId, post.authorName, post.categoryName};
+			session.execute(putPostByAuthor.bind(values));
+			session.execute(putPostByCategory.bind(values));
+			mutations += 2;
+			logger.info("Repaired post " + row.postId + " found in " + copy.table + (current ? "" : ", stale copy deleted"));
+			return mutations;
+		}
+
+		private void deleteCopy(Copy copy, AuditRow row) {
+			session.execute(copy == a
+					? deletePostByAuthor.bind(row.authorId, row.createdAt, row.postId)
+					: deletePostByCategory.bind(row.categoryName, row.createdAt, row.postId));
+		}
+
+		/* createNewPost writes every column; an UPDATE of postContent alone leaves the others null. */
+		private boolean complete(AuditRow row) {
+			return row.authorId != null && row.authorName != null && row.categoryName != null;
+		}
+	}
+
+	private class CommentPair extends Pair {
+
+		CommentPair() {
+			super("comments");
+			a = new Copy("comments_by_post", 0) {
+				@Override
+				long spaceToken(AuditRow row) {
+					return token(key(row.postId));
+				}
+
+				/* Legacy partitions of the slice plus the shard partitions whose (postId, shard) token is in it. */
+				@Override
+				List<AuditRow> scan(int slice) {
+					List<AuditRow> rows = comments(read(slice(scanCommentsByPost, slice)));
+					rows.addAll(comments(read(slice(scanCommentsByPostShard, slice))));
+					return rows;
+				}
+
+				/* Legacy partitions of the slice plus every shard of the sharded posts in it. */
+				@Override
+				List<AuditRow> inSpace(int leaf) {
+					List<AuditRow> rows = comments(read(slice(scanCommentsByPost, leaf)));
+					for (Row post : read(slice(scanCommentShards, leaf))) {
+						for (int shard = 0; shard < post.getInt("shardCount"); shard++) {
+							rows.addAll(comments(read(getCommentShard.bind(post.getUUID("postId"), shard))));
+						}
+					}
+					return rows;
+				}
+
+				/* Legacy partition first, then the shard the commentId maps to. */
+				@Override
+				AuditRow find(AuditRow row) {
+					Row found = readOne(getCommentByPost.bind(row.postId, row.createdAt, row.commentId));
+					if (found == null) {
+						Row layout = readOne(getCommentShards.bind(row.postId));
+						if (layout != null) {
+							int shard = CommentShardRouter.shardFor(row.commentId, layout.getInt("shardCount"));
+							found = readOne(getCommentByPostShard.bind(row.postId, shard, row.createdAt, row.commentId));
+						}
+					}
+					return found == null ? null : AuditRow.comment(found);
+				}
+			};
+			b = new Copy("comments_by_author", 1) {
+				@Override
+				long spaceToken(AuditRow row) {
+					return token(key(row.authorId));
+				}
+
+				@Override
+				List<AuditRow> scan(int slice) {
+					return comments(read(slice(scanCommentsByAuthor, slice)));
+				}
+
+				@Override
+				AuditRow find(AuditRow row) {
+					Row found = readOne(getCommentByAuthor.bind(row.authorId, row.createdAt, row.commentId));
+					return found == null ? null : AuditRow.comment(found);
+				}
+			};
+		}
+
+		private List<AuditRow> comments(List<Row> rows) {
+			List<AuditRow> comments = new ArrayList<>(rows.size());
+			for (Row row : rows) {
+				comments.add(AuditRow.comment(row));
+			}
+			return comments;
+		}
+
+		@Override
+		int repair(Copy copy, AuditRow row, AuditRow counterpart) {
+			AuditRow source = copy == a ? row : counterpart;
+			if (source == null) {
+				session.execute(deleteCommentByAuthor.bind(row.authorId, row.createdAt, row.commentId));
+				logger.info("Deleted comment " + row.commentId + " missing from comments_by_post");
+			} else {
+				session.execute(putCommentByAuthor.bind(source.postId, source.authorId, source.createdAt, source.commentId, source.content));
+				logger.info("Rewrote comments_by_author copy of comment " + row.commentId);
+			}
+			return 1;
+		}
+	}
+}
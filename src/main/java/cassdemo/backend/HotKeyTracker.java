@@ -0,0 +1,112 @@
+package cassdemo.backend;
+
+import cassdemo.metrics.HeavyHitters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Hottest partition keys per table since start (or the last reset()), one HeavyHitters
+ * sketch per table. Rates are averages over that whole window.
+ */
+public class HotKeyTracker {
+
+	private final int depth;
+	private final int width;
+	private final int top;
+	private final Map<String, HeavyHitters> tables = new ConcurrentHashMap<>();
+	private volatile long startNanos = System.nanoTime();
+
+	HotKeyTracker(int depth, int width, int top) {
+		this.depth = depth;
+		this.width = width;
+		this.top = top;
+	}
+
+	void record(String table, Object partitionKey) {
+		HeavyHitters sketch = tables.get(table);
+		if (sketch == null) {
+			sketch = tables.computeIfAbsent(table, t -> new HeavyHitters(depth, width, top * 4));
+		}
+		sketch.add(partitionKey);
+	}
+
+	public List<String> getTables() {
+		return new ArrayList<>(new TreeSet<>(tables.keySet()));
+	}
+
+	/* Up to `top` hottest keys of the table, hottest first; empty for an unseen table. */
+	public List<HotKey> getHotKeys(String table) {
+		HeavyHitters sketch = tables.get(table);
+		List<HotKey> hotKeys = new ArrayList<>();
+		if (sketch == null) {
+			return hotKeys;
+		}
+		double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+		long total = sketch.getTotal();
+		for (Map.Entry<Object, Long> entry : sketch.top(top)) {
+			hotKeys.add(new HotKey(entry.getKey(), entry.getValue(), entry.getValue() / seconds,
+					total == 0 ? 0 : (double) entry.getValue() / total));
+		}
+		return hotKeys;
+	}
+
+	public void reset() {
+		for (HeavyHitters sketch : tables.values()) {
+			sketch.reset();
+		}
+		startNanos = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("hot keys:\n");
+		for (String table : getTables()) {
+			for (HotKey hotKey : getHotKeys(table)) {
+				builder.append(String.format("  %-24s %s%n", table, hotKey));
+			}
+		}
+		return builder.toString();
+	}
+
+	public static class HotKey {
+		private final Object key;
+		private final long count;
+		private final double perSecond;
+		private final double share;
+
+		HotKey(Object key, long count, double perSecond, double share) {
+			this.key = key;
+			this.count = count;
+			this.perSecond = perSecond;
+			this.share = share;
+		}
+
+		/* Partition key value; a List of the components for composite keys. */
+		public Object getKey() {
+			return key;
+		}
+
+		/* Estimated requests, never less than the real number. */
+		public long getCount() {
+			return count;
+		}
+
+		public double getPerSecond() {
+			return perSecond;
+		}
+
+		/* Fraction of the table's requests that went to this key. */
+		public double getShare() {
+			return share;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s count=%d rate=%.1f/s share=%.1f%%", key, count, perSecond, share * 100);
+		}
+	}
+}
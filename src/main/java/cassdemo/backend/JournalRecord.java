@@ -0,0 +1,92 @@
+package cassdemo.backend;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/*
+ * A mutation accepted by the write-behind journal. Only the fields its type needs are set.
+ * Binary layout: type byte, then the fields of that type in declaration order; UUIDs as two
+ * longs, timestamps as epoch millis, strings as an int length plus UTF-8 bytes.
+ */
+class JournalRecord {
+
+	static final byte NEW_COMMENT = 1;
+	static final byte INCREMENT_POST_LIKES = 2;
+	static final byte LIKED_POST_BY_USER = 3;
+
+	final byte type;
+	final UUID postId;
+	final UUID userId;
+	final String authorName;
+	final long createdAt;
+	final UUID commentId;
+	final String content;
+
+	private JournalRecord(byte type, UUID postId, UUID userId, String authorName, long createdAt, UUID commentId, String content) {
+		this.type = type;
+		this.postId = postId;
+		this.userId = userId;
+		this.authorName = authorName;
+		this.createdAt = createdAt;
+		this.commentId = commentId;
+		this.content = content;
+	}
+
+	static JournalRecord newComment(UUID postId, UUID authorId, String authorName, long createdAt, UUID commentId, String content) {
+		return new JournalRecord(NEW_COMMENT, postId, authorId, authorName, createdAt, commentId, content);
+	}
+
+	static JournalRecord incrementPostLikes(UUID postId, UUID userId) {
+		return new JournalRecord(INCREMENT_POST_LIKES, postId, userId, null, 0, null, null);
+	}
+
+	static JournalRecord likedPostByUser(UUID postId, UUID userId) {
+		return new JournalRecord(LIKED_POST_BY_USER, postId, userId, null, 0, null, null);
+	}
+
+	byte[] encode() {
+		byte[] name = authorName == null ? null : authorName.getBytes(StandardCharsets.UTF_8);
+		byte[] text = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+		int size = 1 + 32 + (type == NEW_COMMENT ? 4 + name.length + 8 + 16 + 4 + text.length : 0);
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(type);
+		putUuid(buffer, postId);
+		putUuid(buffer, userId);
+		if (type == NEW_COMMENT) {
+			buffer.putInt(name.length).put(name);
+			buffer.putLong(createdAt);
+			putUuid(buffer, commentId);
+			buffer.putInt(text.length).put(text);
+		}
+		return buffer.array();
+	}
+
+	static JournalRecord decode(ByteBuffer buffer) {
+		byte type = buffer.get();
+		UUID postId = getUuid(buffer);
+		UUID userId = getUuid(buffer);
+		if (type != NEW_COMMENT) {
+			return new JournalRecord(type, postId, userId, null, 0, null, null);
+		}
+		String authorName = getString(buffer);
+		long createdAt = buffer.getLong();
+		UUID commentId = getUuid(buffer);
+		String content = getString(buffer);
+		return new JournalRecord(type, postId, userId, authorName, createdAt, commentId, content);
+	}
+
+	private static void putUuid(ByteBuffer buffer, UUID uuid) {
+		buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+	}
+
+	private static UUID getUuid(ByteBuffer buffer) {
+		return new UUID(buffer.getLong(), buffer.getLong());
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,148 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.AbstractSession;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Session decorator that feeds the partition key of every bound statement into a
+ * HotKeyTracker. The table and partition key columns of each prepared statement are looked
+ * up in the schema metadata once; statements that don't bind the whole partition key (full
+ * scans, TRUNCATE) and unprepared statements aren't tracked.
+ */
+class KeyTrackingSession extends AbstractSession {
+
+	private static final PartitionKey UNTRACKED = new PartitionKey(null, new String[0]);
+
+	private final Session delegate;
+	private final HotKeyTracker tracker;
+	private final Map<PreparedStatement, PartitionKey> partitionKeys = new ConcurrentHashMap<>();
+
+	KeyTrackingSession(Session delegate, HotKeyTracker tracker) {
+		this.delegate = delegate;
+		this.tracker = tracker;
+	}
+
+	@Override
+	public ResultSetFuture executeAsync(Statement statement) {
+		if (statement instanceof BoundStatement) {
+			BoundStatement bound = (BoundStatement) statement;
+			PreparedStatement prepared = bound.preparedStatement();
+			PartitionKey key = partitionKeys.get(prepared);
+			if (key == null) {
+				key = partitionKeys.computeIfAbsent(prepared, this::partitionKeyOf);
+			}
+			Object value = key == UNTRACKED ? null : key.valueOf(bound);
+			if (value != null) {
+				tracker.record(key.table, value);
+			}
+		}
+		return delegate.executeAsync(statement);
+	}
+
+	private PartitionKey partitionKeyOf(PreparedStatement prepared) {
+		ColumnDefinitions variables = prepared.getVariables();
+		if (variables.size() == 0) {
+			return UNTRACKED;
+		}
+		KeyspaceMetadata keyspace = getCluster().getMetadata().getKeyspace(variables.getKeyspace(0));
+		TableMetadata table = keyspace == null ? null : keyspace.getTable(variables.getTable(0));
+		if (table == null) {
+			return UNTRACKED;
+		}
+		List<String> columns = new ArrayList<>();
+		for (ColumnMetadata column : table.getPartitionKey()) {
+			if (!variables.contains(column.getName())) {
+				return UNTRACKED;
+			}
+			columns.add(column.getName());
+		}
+		return new PartitionKey(table.getName(), columns.toArray(new String[0]));
+	}
+
+	private static class PartitionKey {
+		final String table;
+		final String[] columns;
+
+		PartitionKey(String table, String[] columns) {
+			this.table = table;
+			this.columns = columns;
+		}
+
+		Object valueOf(BoundStatement bound) {
+			if (columns.length == 1) {
+				return bound.getObject(columns[0]);
+			}
+			Object[] values = new Object[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				values[i] = bound.getObject(columns[i]);
+			}
+			return Arrays.asList(values);
+		}
+	}
+
+	@Override
+	protected ListenableFuture<PreparedStatement> prepareAsync(String query, Map<String, ByteBuffer> customPayload) {
+		if (customPayload == null) {
+			return delegate.prepareAsync(query);
+		}
+		SimpleStatement statement = new SimpleStatement(query);
+		statement.setOutgoingPayload(customPayload);
+		return delegate.prepareAsync(statement);
+	}
+
+	@Override
+	public String getLoggedKeyspace() {
+		return delegate.getLoggedKeyspace();
+	}
+
+	@Override
+	public Session init() {
+		delegate.init();
+		return this;
+	}
+
+	@Override
+	public ListenableFuture<Session> initAsync() {
+		return Futures.transform(delegate.initAsync(), (com.google.common.base.Function<Session, Session>) session -> this);
+	}
+
+	@Override
+	public CloseFuture closeAsync() {
+		return delegate.closeAsync();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	@Override
+	public Cluster getCluster() {
+		return delegate.getCluster();
+	}
+
+	@Override
+	public State getState() {
+		return delegate.getState();
+	}
+}
@@ -0,0 +1,268 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.AbstractSession;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Session decorator that puts every request through a ConcurrencyLimiter, one for reads and
+ * one for writes. execute() and the String variants all end up in executeAsync(), so this is
+ * the single place where requests are admitted.
+ *
+ * executeAsync() never blocks: a request over the limit gets a pending future and is sent
+ * from release() once a slot frees up, or fails with LimiterRejectedException after the
+ * queue timeout. Prepared statements are classified as read or write once, when prepared.
+ */
+class LimitedSession extends AbstractSession {
+
+	private final Session delegate;
+	private final ConcurrencyLimiter readLimiter;
+	private final ConcurrencyLimiter writeLimiter;
+	private final Map<PreparedStatement, Boolean> reads = new ConcurrentHashMap<>();
+
+	LimitedSession(Session delegate, ConcurrencyLimiter readLimiter, ConcurrencyLimiter writeLimiter) {
+		this.delegate = delegate;
+		this.readLimiter = readLimiter;
+		this.writeLimiter = writeLimiter;
+	}
+
+	@Override
+	public ResultSetFuture executeAsync(Statement statement) {
+		ConcurrencyLimiter limiter = isRead(statement) ? readLimiter : writeLimiter;
+		ListenableFuture<Long> admission = limiter.acquire();
+		if (admission.isDone() && !admission.isCancelled()) {
+			try {
+				return send(statement, limiter, Uninterruptibles.getUninterruptibly(admission));
+			} catch (ExecutionException e) {
+				PendingResultSetFuture rejected = new PendingResultSetFuture(admission);
+				rejected.fail(e.getCause());
+				return rejected;
+			}
+		}
+
+		PendingResultSetFuture pending = new PendingResultSetFuture(admission);
+		Futures.addCallback(admission, new FutureCallback<Long>() {
+			@Override
+			public void onSuccess(Long admittedAt) {
+				try {
+					pending.follow(send(statement, limiter, admittedAt));
+				} catch (RuntimeException e) {
+					pending.fail(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				pending.fail(t);
+			}
+		});
+		return pending;
+	}
+
+	private ResultSetFuture send(Statement statement, ConcurrencyLimiter limiter, long admittedAt) {
+		ResultSetFuture future;
+		try {
+			future = delegate.executeAsync(statement);
+		} catch (RuntimeException e) {
+			limiter.release(admittedAt, false);
+			throw e;
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet result) {
+				limiter.release(admittedAt, false);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				limiter.release(admittedAt, isCongestion(t));
+			}
+		});
+		return future;
+	}
+
+	private boolean isRead(Statement statement) {
+		if (statement instanceof BoundStatement) {
+			PreparedStatement prepared = ((BoundStatement) statement).preparedStatement();
+			Boolean read = reads.get(prepared);
+			if (read == null) {
+				// prepared on another session in the chain, classify it on first use
+				read = isSelect(prepared.getQueryString());
+				reads.put(prepared, read);
+			}
+			return read;
+		}
+		return statement instanceof RegularStatement && isSelect(((RegularStatement) statement).getQueryString());
+	}
+
+	private static boolean isSelect(String query) {
+		return query.trim().regionMatches(true, 0, "SELECT", 0, 6);
+	}
+
+	private static boolean isCongestion(Throwable t) {
+		return t instanceof OperationTimedOutException
+				|| t instanceof ReadTimeoutException
+				|| t instanceof WriteTimeoutException
+				|| t instanceof OverloadedException
+				|| t instanceof NoHostAvailableException;
+	}
+
+	@Override
+	protected ListenableFuture<PreparedStatement> prepareAsync(String query, Map<String, ByteBuffer> customPayload) {
+		ListenableFuture<PreparedStatement> future;
+		if (customPayload == null) {
+			future = delegate.prepareAsync(query);
+		} else {
+			SimpleStatement statement = new SimpleStatement(query);
+			statement.setOutgoingPayload(customPayload);
+			future = delegate.prepareAsync(statement);
+		}
+		return Futures.transform(future, (com.google.common.base.Function<PreparedStatement, PreparedStatement>) prepared -> {
+			reads.put(prepared, isSelect(query));
+			return prepared;
+		});
+	}
+
+	@Override
+	public String getLoggedKeyspace() {
+		return delegate.getLoggedKeyspace();
+	}
+
+	@Override
+	public Session init() {
+		delegate.init();
+		return this;
+	}
+
+	@Override
+	public ListenableFuture<Session> initAsync() {
+		return Futures.transform(delegate.initAsync(), (com.google.common.base.Function<Session, Session>) session -> this);
+	}
+
+	@Override
+	public CloseFuture closeAsync() {
+		return delegate.closeAsync();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	@Override
+	public Cluster getCluster() {
+		return delegate.getCluster();
+	}
+
+	@Override
+	public State getState() {
+		return delegate.getState();
+	}
+
+	/* Result of a request that had to queue for a slot; follows the real one once sent. */
+	private static class PendingResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		private final ListenableFuture<Long> admission;
+		private volatile ResultSetFuture sent;
+
+		PendingResultSetFuture(ListenableFuture<Long> admission) {
+			this.admission = admission;
+		}
+
+		void follow(ResultSetFuture future) {
+			sent = future;
+			if (isCancelled()) {
+				future.cancel(false);
+				return;
+			}
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				@Override
+				public void onSuccess(ResultSet result) {
+					set(result);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					setException(t);
+				}
+			});
+		}
+
+		void fail(Throwable t) {
+			setException(t);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			ResultSetFuture future = sent;
+			if (future != null) {
+				future.cancel(mayInterruptIfRunning);
+			} else {
+				admission.cancel(false);
+			}
+			return true;
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			try {
+				return Uninterruptibles.getUninterruptibly(this);
+			} catch (ExecutionException e) {
+				throw propagate(e.getCause());
+			}
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException {
+			try {
+				return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+			} catch (ExecutionException e) {
+				throw propagate(e.getCause());
+			}
+		}
+
+		/* Same contract as the driver's futures: driver exceptions are rethrown as copies. */
+		private static RuntimeException propagate(Throwable cause) {
+			if (cause instanceof DriverException) {
+				throw ((DriverException) cause).copy();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new DriverInternalError("Unexpected exception thrown", cause);
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package cassdemo.backend;
+
+/*
+ * Fails a request instead of sending it when the client side concurrency limit is
+ * saturated and no slot freed up within the queue timeout.
+ */
+public class LimiterRejectedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public LimiterRejectedException(String message) {
+		super(message);
+	}
+}
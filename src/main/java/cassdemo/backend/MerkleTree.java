@@ -0,0 +1,91 @@
+package cassdemo.backend;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Hash tree over 2^depth leaves, kept for two sides at once so they can be compared. A leaf
+ * hash is the sum of the digests of the rows added to it, which doesn't depend on the order
+ * the rows were scanned in; inner nodes mix their two children. Comparing walks down from
+ * the root and only descends into subtrees whose hashes differ.
+ */
+class MerkleTree {
+
+	private final int depth;
+	private final long[][] leaves;
+
+	MerkleTree(int depth) {
+		this.depth = depth;
+		this.leaves = new long[2][1 << depth];
+	}
+
+	int getLeafCount() {
+		return 1 << depth;
+	}
+
+	void add(int side, int leaf, long digest) {
+		leaves[side][leaf] += digest;
+	}
+
+	/* Leaves whose hashes differ between the two sides, in order. */
+	List<Integer> differingLeaves() {
+		long[][] a = levels(leaves[0]);
+		long[][] b = levels(leaves[1]);
+		List<Integer> differing = new ArrayList<>();
+		descend(a, b, 0, 0, differing);
+		return differing;
+	}
+
+	private void descend(long[][] a, long[][] b, int level, int node, List<Integer> differing) {
+		if (a[level][node] == b[level][node]) {
+			return;
+		}
+		if (level == depth) {
+			differing.add(node);
+			return;
+		}
+		descend(a, b, level + 1, node * 2, differing);
+		descend(a, b, level + 1, node * 2 + 1, differing);
+	}
+
+	/* levels[0] is the root, levels[depth] the leaves. */
+	private long[][] levels(long[] leafHashes) {
+		long[][] levels = new long[depth + 1][];
+		levels[depth] = leafHashes;
+		for (int level = depth - 1; level >= 0; level--) {
+			long[] below = levels[level + 1];
+			long[] nodes = new long[below.length / 2];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = mix(below[i * 2] * 31 + mix(below[i * 2 + 1]));
+			}
+			levels[level] = nodes;
+		}
+		return levels;
+	}
+
+	/* splitmix64 finalizer */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+
+	void write(DataOutput out) throws IOException {
+		for (long[] side : leaves) {
+			for (long hash : side) {
+				out.writeLong(hash);
+			}
+		}
+	}
+
+	void read(DataInput in) throws IOException {
+		for (long[] side : leaves) {
+			for (int i = 0; i < side.length; i++) {
+				side[i] = in.readLong();
+			}
+		}
+	}
+}
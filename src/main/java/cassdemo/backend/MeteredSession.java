@@ -0,0 +1,120 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.AbstractSession;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Session decorator keeping StatementMetrics per prepared statement. Statements get their
+ * metrics when prepared, so the set is complete once BackendSession finished preparing.
+ * Unprepared statements aren't measured.
+ */
+class MeteredSession extends AbstractSession {
+
+	private final Session delegate;
+	private final Map<PreparedStatement, StatementMetrics> metrics = new ConcurrentHashMap<>();
+
+	MeteredSession(Session delegate) {
+		this.delegate = delegate;
+	}
+
+	Collection<StatementMetrics> getStatementMetrics() {
+		return new ArrayList<>(metrics.values());
+	}
+
+	@Override
+	public ResultSetFuture executeAsync(Statement statement) {
+		StatementMetrics statementMetrics = statement instanceof BoundStatement
+				? metrics.get(((BoundStatement) statement).preparedStatement())
+				: null;
+		long start = System.nanoTime();
+		ResultSetFuture future = delegate.executeAsync(statement);
+		if (statementMetrics != null) {
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				@Override
+				public void onSuccess(ResultSet result) {
+					statementMetrics.succeeded(System.nanoTime() - start);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					statementMetrics.failed(System.nanoTime() - start, t instanceof OperationTimedOutException
+							|| t instanceof ReadTimeoutException
+							|| t instanceof WriteTimeoutException);
+				}
+			});
+		}
+		return future;
+	}
+
+	@Override
+	protected ListenableFuture<PreparedStatement> prepareAsync(String query, Map<String, ByteBuffer> customPayload) {
+		ListenableFuture<PreparedStatement> future;
+		if (customPayload == null) {
+			future = delegate.prepareAsync(query);
+		} else {
+			SimpleStatement statement = new SimpleStatement(query);
+			statement.setOutgoingPayload(customPayload);
+			future = delegate.prepareAsync(statement);
+		}
+		return Futures.transform(future, (com.google.common.base.Function<PreparedStatement, PreparedStatement>) prepared -> {
+			metrics.computeIfAbsent(prepared, p -> new StatementMetrics(p.getQueryString()));
+			return prepared;
+		});
+	}
+
+	@Override
+	public String getLoggedKeyspace() {
+		return delegate.getLoggedKeyspace();
+	}
+
+	@Override
+	public Session init() {
+		delegate.init();
+		return this;
+	}
+
+	@Override
+	public ListenableFuture<Session> initAsync() {
+		return Futures.transform(delegate.initAsync(), (com.google.common.base.Function<Session, Session>) session -> this);
+	}
+
+	@Override
+	public CloseFuture closeAsync() {
+		return delegate.closeAsync();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	@Override
+	public Cluster getCluster() {
+		return delegate.getCluster();
+	}
+
+	@Override
+	public State getState() {
+		return delegate.getState();
+	}
+}
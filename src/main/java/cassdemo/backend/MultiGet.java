@@ -0,0 +1,90 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/*
+ * Runs one single-partition statement per key concurrently, with at most `maxInFlight`
+ * requests outstanding. Statements are issued grouped by their primary replica, so with
+ * token-aware routing the requests for one node leave back to back on the same connection
+ * instead of interleaving with every other node's. No IN queries: each key still goes
+ * straight to a replica, which keeps coordinator fan-out off the cluster.
+ */
+class MultiGet {
+
+	private final Session session;
+	private final int maxInFlight;
+
+	MultiGet(Session session, int maxInFlight) {
+		this.session = session;
+		this.maxInFlight = maxInFlight;
+	}
+
+	<K> Map<K, ResultSet> execute(Collection<K> keys, Function<K, BoundStatement> statementFor) throws InterruptedException {
+		List<Keyed<K>> statements = new ArrayList<>(keys.size());
+		for (K key : keys) {
+			statements.add(new Keyed<>(key, statementFor.apply(key)));
+		}
+		groupByReplica(statements);
+
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		List<ResultSetFuture> futures = new ArrayList<>(statements.size());
+		for (Keyed<K> keyed : statements) {
+			inFlight.acquire();
+			ResultSetFuture future = session.executeAsync(keyed.statement);
+			future.addListener(inFlight::release, MoreExecutors.directExecutor());
+			futures.add(future);
+		}
+
+		Map<K, ResultSet> results = new LinkedHashMap<>();
+		for (int i = 0; i < statements.size(); i++) {
+			results.put(statements.get(i).key, futures.get(i).getUninterruptibly());
+		}
+		return results;
+	}
+
+	private <K> void groupByReplica(List<Keyed<K>> statements) {
+		Metadata metadata = session.getCluster().getMetadata();
+		for (Keyed<K> keyed : statements) {
+			String keyspace = keyed.statement.getKeyspace();
+			ByteBuffer routingKey = keyed.statement.getRoutingKey(
+					session.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion(),
+					session.getCluster().getConfiguration().getCodecRegistry());
+			if (keyspace == null || routingKey == null) {
+				continue;
+			}
+			Set<Host> replicas = metadata.getReplicas(Metadata.quote(keyspace), routingKey);
+			if (!replicas.isEmpty()) {
+				keyed.replica = replicas.iterator().next().getAddress().getHostAddress();
+			}
+		}
+		statements.sort(Comparator.comparing(keyed -> keyed.replica));
+	}
+
+	private static class Keyed<K> {
+		final K key;
+		final BoundStatement statement;
+		String replica = "";
+
+		Keyed(K key, BoundStatement statement) {
+			this.key = key;
+			this.statement = statement;
+		}
+	}
+}
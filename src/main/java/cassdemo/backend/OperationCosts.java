@@ -0,0 +1,76 @@
+package cassdemo.backend;
+
+import cassdemo.metrics.CostAccumulator;
+import cassdemo.metrics.ThreadCosts;
+import cassdemo.trace.TraceOp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Allocated bytes and CPU time per backend operation, sampled around BackendSession's
+ * operation hooks with ThreadCosts. Costs are inclusive: an operation that calls another
+ * one (editPost looking the post up first) also pays for the inner one. Only operations
+ * that succeed are recorded; frames are matched by their System.nanoTime() start, so the
+ * readings of a failed operation are dropped once an operation that began before it ends.
+ */
+public class OperationCosts {
+
+	private static final int MAX_DEPTH = 16;
+
+	private final double sampleRate;
+	private final Map<TraceOp, CostAccumulator> costs = new EnumMap<>(TraceOp.class);
+	private final ThreadLocal<Frames> frames = ThreadLocal.withInitial(Frames::new);
+
+	OperationCosts(double sampleRate) {
+		this.sampleRate = sampleRate;
+		for (TraceOp op : TraceOp.values()) {
+			costs.put(op, new CostAccumulator());
+		}
+	}
+
+	/* start identifies the operation; it must be passed to end() unchanged. */
+	void begin(long start) {
+		if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return;
+		}
+		Frames stack = frames.get();
+		if (stack.depth == MAX_DEPTH) {
+			stack.depth = 0;
+		}
+		int i = stack.depth++;
+		stack.starts[i] = start;
+		stack.bytes[i] = ThreadCosts.allocatedBytes();
+		stack.cpu[i] = ThreadCosts.cpuNanos();
+	}
+
+	void end(TraceOp op, long start) {
+		Frames stack = frames.get();
+		// frames that started later belong to inner operations that failed
+		while (stack.depth > 0 && stack.starts[stack.depth - 1] > start) {
+			stack.depth--;
+		}
+		if (stack.depth > 0 && stack.starts[stack.depth - 1] == start) {
+			int i = --stack.depth;
+			costs.get(op).add(ThreadCosts.allocatedBytes() - stack.bytes[i], ThreadCosts.cpuNanos() - stack.cpu[i]);
+		}
+	}
+
+	public CostAccumulator get(TraceOp op) {
+		return costs.get(op);
+	}
+
+	public void reset() {
+		for (CostAccumulator cost : costs.values()) {
+			cost.reset();
+		}
+	}
+
+	private static class Frames {
+		final long[] starts = new long[MAX_DEPTH];
+		final long[] bytes = new long[MAX_DEPTH];
+		final long[] cpu = new long[MAX_DEPTH];
+		int depth;
+	}
+}
@@ -0,0 +1,16 @@
+package cassdemo.backend;
+
+import cassdemo.trace.TraceOp;
+
+import java.util.UUID;
+
+/*
+ * Called by BackendSession after every successful operation, on the calling thread, so
+ * implementations must be cheap and thread safe. Keys follow the trace convention: key1 is
+ * the post, key2 the user / author, key3 the comment; unused keys are null, an unused
+ * timestamp is 0.
+ */
+public interface OperationListener {
+	void operationCompleted(TraceOp op, long startNanos, long endNanos, int payloadSize,
+			UUID key1, UUID key2, UUID key3, long timestamp, String name);
+}
@@ -0,0 +1,30 @@
+package cassdemo.backend;
+
+import java.util.List;
+
+/*
+ * One page of a paged read. The cursor is opaque to callers: pass it back unchanged
+ * to fetch the following page. A null cursor means there are no more rows.
+ */
+public class Page<T> {
+
+	private final List<T> items;
+	private final String nextCursor;
+
+	public Page(List<T> items, String nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+}
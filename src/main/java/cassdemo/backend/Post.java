@@ -0,0 +1,68 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.Row;
+
+import java.util.Date;
+import java.util.UUID;
+
+/*
+ * A post as stored in posts_by_author / posts_by_category. Both tables carry every column,
+ * so a Post can be read from either of them.
+ */
+public class Post {
+
+	private final UUID postId;
+	private final UUID authorId;
+	private final String authorName;
+	private final String categoryName;
+	private final String postContent;
+	private final Date createdAt;
+
+	public Post(UUID postId, UUID authorId, String authorName, String categoryName, String postContent, Date createdAt) {
+		this.postId = postId;
+		this.authorId = authorId;
+		this.authorName = authorName;
+		this.categoryName = categoryName;
+		this.postContent = postContent;
+		this.createdAt = createdAt;
+	}
+
+	static Post fromRow(Row row) {
+		return new Post(
+				row.getUUID("postId"),
+				row.getUUID("authorId"),
+				row.getString("authorName"),
+				row.getString("categoryName"),
+				row.getString("postContent"),
+				row.getTimestamp("createdAt"));
+	}
+
+	public UUID getPostId() {
+		return postId;
+	}
+
+	public UUID getAuthorId() {
+		return authorId;
+	}
+
+	public String getAuthorName() {
+		return authorName;
+	}
+
+	public String getCategoryName() {
+		return categoryName;
+	}
+
+	public String getPostContent() {
+		return postContent;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("- %-10s %-10s %-10s %-10s %-10s %-10s-", categoryName, postId, postContent, createdAt, authorId, authorName);
+	}
+}
@@ -0,0 +1,52 @@
+package cassdemo.backend;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+ * Bounded LRU cache of postId -> the keys needed to address the post in posts_by_author
+ * and posts_by_category. Entries are immutable, a post's keys never change after creation.
+ */
+class PostKeyCache {
+
+	private final Map<UUID, PostKey> keys;
+
+	PostKeyCache(int capacity) {
+		this.keys = new LinkedHashMap<UUID, PostKey>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, PostKey> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	synchronized PostKey get(UUID postId) {
+		return keys.get(postId);
+	}
+
+	synchronized void put(UUID postId, PostKey key) {
+		keys.put(postId, key);
+	}
+
+	synchronized void remove(UUID postId) {
+		keys.remove(postId);
+	}
+
+	synchronized void clear() {
+		keys.clear();
+	}
+
+	static class PostKey {
+		final UUID authorId;
+		final Date createdAt;
+		final String categoryName;
+
+		PostKey(UUID authorId, Date createdAt, String categoryName) {
+			this.authorId = authorId;
+			this.createdAt = createdAt;
+			this.categoryName = categoryName;
+		}
+	}
+}
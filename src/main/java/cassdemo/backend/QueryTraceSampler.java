@@ -0,0 +1,206 @@
+package cassdemo.backend;
+
+import cassdemo.metrics.LatencyHistogram;
+import com.datastax.driver.core.QueryTrace;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Partition health per table, from the query traces of sampled reads and the warnings
+ * Cassandra attaches to any read (tombstone_warn_threshold and the like). From a trace it
+ * takes the live rows and tombstone cells each replica read, the sstables merged, the
+ * number of replicas involved, and the time spent per stage: on every replica, the gap
+ * between two consecutive trace events is charged to the stage (thread pool) that logged
+ * the later one.
+ */
+public class QueryTraceSampler {
+
+	private static final Pattern READ = Pattern.compile("Read (\\d+) live rows and (\\d+) tombstone cells");
+	private static final Pattern MERGED = Pattern.compile("Merged data from memtables and (\\d+) sstables");
+	private static final Pattern POOL_SUFFIX = Pattern.compile("[:\\-]\\d+$");
+	private static final int KEPT_WARNINGS = 5;
+
+	private final Map<String, TableHealth> tables = new ConcurrentHashMap<>();
+	private final LongAdder dropped = new LongAdder();
+
+	void recordTrace(String table, QueryTrace trace) {
+		TableHealth health = health(table);
+		Map<InetAddress, List<QueryTrace.Event>> bySource = new HashMap<>();
+		long live = 0;
+		long tombstones = 0;
+		long sstables = 0;
+		boolean sawSstables = false;
+		for (QueryTrace.Event event : trace.getEvents()) {
+			bySource.computeIfAbsent(event.getSource(), s -> new ArrayList<>()).add(event);
+			String description = event.getDescription();
+			Matcher read = READ.matcher(description);
+			if (read.find()) {
+				live += Long.parseLong(read.group(1));
+				tombstones += Long.parseLong(read.group(2));
+				continue;
+			}
+			Matcher merged = MERGED.matcher(description);
+			if (merged.find()) {
+				sstables += Long.parseLong(merged.group(1));
+				sawSstables = true;
+			}
+		}
+
+		health.traced.increment();
+		health.liveRows.add(live);
+		health.tombstoneCells.add(tombstones);
+		health.replicas.add(bySource.size());
+		health.duration.record(trace.getDurationMicros());
+		if (sawSstables) {
+			health.sstableReads.increment();
+			health.sstables.add(sstables);
+		}
+
+		for (List<QueryTrace.Event> events : bySource.values()) {
+			events.sort(Comparator.comparingInt(QueryTrace.Event::getSourceElapsedMicros));
+			for (int i = 1; i < events.size(); i++) {
+				QueryTrace.Event event = events.get(i);
+				long gap = event.getSourceElapsedMicros() - events.get(i - 1).getSourceElapsedMicros();
+				String stage = event.getThreadName() == null ? "unknown" : POOL_SUFFIX.matcher(event.getThreadName()).replaceFirst("");
+				health.stages.computeIfAbsent(stage, s -> new LatencyHistogram()).record(gap);
+			}
+		}
+	}
+
+	void recordWarnings(String table, List<String> warnings) {
+		TableHealth health = health(table);
+		health.warnings.add(warnings.size());
+		synchronized (health.recentWarnings) {
+			for (String warning : warnings) {
+				if (health.recentWarnings.size() == KEPT_WARNINGS) {
+					health.recentWarnings.remove(0);
+				}
+				health.recentWarnings.add(warning);
+			}
+		}
+	}
+
+	/* A sampled trace that was skipped because the fetch queue was full or the fetch failed. */
+	void recordDropped() {
+		dropped.increment();
+	}
+
+	private TableHealth health(String table) {
+		return tables.computeIfAbsent(table, t -> new TableHealth());
+	}
+
+	public Set<String> getTables() {
+		return new TreeSet<>(tables.keySet());
+	}
+
+	public TableHealth get(String table) {
+		return tables.get(table);
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public void reset() {
+		tables.clear();
+		dropped.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("partition health:\n");
+		for (String table : getTables()) {
+			TableHealth health = tables.get(table);
+			builder.append(String.format("  %-24s %s%n", table, health));
+			for (Map.Entry<String, LatencyHistogram> stage : health.getSlowestStages(3)) {
+				builder.append(String.format("  %-24s   %-28s mean=%.0fus p99=%dus%n", "", stage.getKey(),
+						stage.getValue().getMean(), stage.getValue().getPercentile(99)));
+			}
+		}
+		builder.append(String.format("  traces dropped: %d%n", getDropped()));
+		return builder.toString();
+	}
+
+	public static class TableHealth {
+		private final LongAdder traced = new LongAdder();
+		private final LongAdder liveRows = new LongAdder();
+		private final LongAdder tombstoneCells = new LongAdder();
+		private final LongAdder replicas = new LongAdder();
+		private final LongAdder sstableReads = new LongAdder();
+		private final LongAdder sstables = new LongAdder();
+		private final LongAdder warnings = new LongAdder();
+		private final LatencyHistogram duration = new LatencyHistogram();
+		private final Map<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+		private final List<String> recentWarnings = new ArrayList<>();
+
+		public long getTraced() {
+			return traced.sum();
+		}
+
+		public long getLiveRows() {
+			return liveRows.sum();
+		}
+
+		public long getTombstoneCells() {
+			return tombstoneCells.sum();
+		}
+
+		/* Tombstone cells scanned per live row returned; infinite when only tombstones were read. */
+		public double getTombstonesPerLiveRow() {
+			long live = getLiveRows();
+			long tombstones = getTombstoneCells();
+			return live == 0 ? (tombstones == 0 ? 0 : Double.POSITIVE_INFINITY) : (double) tombstones / live;
+		}
+
+		public double getReplicasPerRead() {
+			long count = getTraced();
+			return count == 0 ? 0 : (double) replicas.sum() / count;
+		}
+
+		/* Sstables merged per replica read that reported it. */
+		public double getSstablesPerRead() {
+			long count = sstableReads.sum();
+			return count == 0 ? 0 : (double) sstables.sum() / count;
+		}
+
+		public long getWarnings() {
+			return warnings.sum();
+		}
+
+		public List<String> getRecentWarnings() {
+			synchronized (recentWarnings) {
+				return new ArrayList<>(recentWarnings);
+			}
+		}
+
+		public LatencyHistogram getDuration() {
+			return duration;
+		}
+
+		/* Stages with the highest mean time per traced read, slowest first. */
+		public List<Map.Entry<String, LatencyHistogram>> getSlowestStages(int k) {
+			List<Map.Entry<String, LatencyHistogram>> sorted = new ArrayList<>(stages.entrySet());
+			sorted.sort(Comparator.comparingDouble((Map.Entry<String, LatencyHistogram> e) -> e.getValue().getMean()).reversed());
+			return sorted.size() > k ? sorted.subList(0, k) : sorted;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("traced=%d live=%d tombstones=%d tombstones/live=%.2f sstables/read=%.1f replicas/read=%.1f warnings=%d p99=%dus",
+					getTraced(), getLiveRows(), getTombstoneCells(), getTombstonesPerLiveRow(), getSstablesPerRead(),
+					getReplicasPerRead(), getWarnings(), duration.getPercentile(99));
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.AbstractSession;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Session decorator that turns on query tracing for a random sampleRate fraction of the
+ * prepared SELECTs and hands their traces, plus the warnings of every read, to a
+ * QueryTraceSampler. Traces are fetched from system_traces by a single background thread
+ * with a bounded queue; when it falls behind, sampled traces are dropped and counted rather
+ * than piling up. Tracing costs the cluster extra writes, so keep the rate low.
+ */
+class QueryTracingSession extends AbstractSession {
+
+	private static final Pattern TABLE = Pattern.compile("\\bFROM\\s+([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+
+	private final Session delegate;
+	private final QueryTraceSampler sampler;
+	private final double sampleRate;
+	private final ThreadPoolExecutor fetcher;
+	private final Map<PreparedStatement, String> tables = new ConcurrentHashMap<>();
+
+	QueryTracingSession(Session delegate, QueryTraceSampler sampler, double sampleRate, int queueSize) {
+		this.delegate = delegate;
+		this.sampler = sampler;
+		this.sampleRate = sampleRate;
+		this.fetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+			Thread thread = new Thread(runnable, "query-trace-fetcher");
+			thread.setDaemon(true);
+			return thread;
+		}, (runnable, executor) -> sampler.recordDropped());
+	}
+
+	@Override
+	public ResultSetFuture executeAsync(Statement statement) {
+		if (!(statement instanceof BoundStatement)) {
+			return delegate.executeAsync(statement);
+		}
+		PreparedStatement prepared = ((BoundStatement) statement).preparedStatement();
+		String table = tables.get(prepared);
+		if (table == null) {
+			table = tables.computeIfAbsent(prepared, QueryTracingSession::tableOf);
+		}
+		if (table.isEmpty()) {
+			return delegate.executeAsync(statement);
+		}
+
+		boolean traced = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+		if (traced) {
+			statement.enableTracing();
+		}
+		String readTable = table;
+		ResultSetFuture future = delegate.executeAsync(statement);
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet result) {
+				ExecutionInfo info = result.getExecutionInfo();
+				List<String> warnings = info.getWarnings();
+				if (warnings != null && !warnings.isEmpty()) {
+					sampler.recordWarnings(readTable, warnings);
+				}
+				if (traced) {
+					fetcher.execute(() -> fetchTrace(readTable, info));
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				// failed reads are accounted for by the metrics and the limiter
+			}
+		});
+		return future;
+	}
+
+	private void fetchTrace(String table, ExecutionInfo info) {
+		try {
+			QueryTrace trace = info.getQueryTrace();
+			if (trace == null) {
+				sampler.recordDropped();
+				return;
+			}
+			sampler.recordTrace(table, trace);
+		} catch (RuntimeException e) {
+			// the trace wasn't written in time, or system_traces is unavailable
+			sampler.recordDropped();
+		}
+	}
+
+	/* Table read by a prepared SELECT, empty for anything else. */
+	private static String tableOf(PreparedStatement prepared) {
+		String query = prepared.getQueryString().trim();
+		if (!query.regionMatches(true, 0, "SELECT", 0, 6)) {
+			return "";
+		}
+		Matcher matcher = TABLE.matcher(query);
+		if (!matcher.find()) {
+			return "";
+		}
+		String table = matcher.group(1).replace("\"", "");
+		return table.substring(table.lastIndexOf('.') + 1);
+	}
+
+	@Override
+	protected ListenableFuture<PreparedStatement> prepareAsync(String query, Map<String, ByteBuffer> customPayload) {
+		if (customPayload == null) {
+			return delegate.prepareAsync(query);
+		}
+		SimpleStatement statement = new SimpleStatement(query);
+		statement.setOutgoingPayload(customPayload);
+		return delegate.prepareAsync(statement);
+	}
+
+	@Override
+	public String getLoggedKeyspace() {
+		return delegate.getLoggedKeyspace();
+	}
+
+	@Override
+	public Session init() {
+		delegate.init();
+		return this;
+	}
+
+	@Override
+	public ListenableFuture<Session> initAsync() {
+		return Futures.transform(delegate.initAsync(), (com.google.common.base.Function<Session, Session>) session -> this);
+	}
+
+	@Override
+	public CloseFuture closeAsync() {
+		fetcher.shutdownNow();
+		return delegate.closeAsync();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	@Override
+	public Cluster getCluster() {
+		return delegate.getCluster();
+	}
+
+	@Override
+	public State getState() {
+		return delegate.getState();
+	}
+}
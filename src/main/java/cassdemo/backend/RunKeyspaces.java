@@ -0,0 +1,94 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Run isolation: instead of truncating the tables between runs (a flush and a snapshot of
+ * every table, one after another), each run gets a fresh keyspace
+ * <keyspace>_run_<yyyyMMdd_HHmmss>_<4 hex digits> built from the schema script. The
+ * timestamp makes the names sort by age; old run keyspaces are dropped in the background,
+ * keeping the newest `retention` of them, the current one included.
+ */
+public class RunKeyspaces {
+
+	private static final Logger logger = LoggerFactory.getLogger(RunKeyspaces.class);
+
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+	// keyspace names are limited to 48 characters, the suffix takes 25
+	private static final int MAX_BASE_LENGTH = 23;
+
+	private RunKeyspaces() {
+	}
+
+	/* Creates the keyspace and tables of a new run and returns the keyspace name. */
+	public static String create(Cluster cluster, SchemaScript schema, String baseKeyspace) throws BackendException {
+		String keyspace = String.format("%s%s_%04x", prefix(baseKeyspace), ZonedDateTime.now(ZoneOffset.UTC).format(TIMESTAMP),
+				ThreadLocalRandom.current().nextInt(0x10000));
+		try (Session session = cluster.connect()) {
+			session.execute(schema.createKeyspace(keyspace));
+		} catch (Exception e) {
+			throw new BackendException("Could not create run keyspace " + keyspace + ". " + e.getMessage() + ".", e);
+		}
+		try (Session session = cluster.connect(keyspace)) {
+			for (String statement : schema.getStatements()) {
+				session.execute(statement);
+			}
+		} catch (Exception e) {
+			throw new BackendException("Could not create the tables of run keyspace " + keyspace + ". " + e.getMessage() + ".", e);
+		}
+		logger.info("Created run keyspace " + keyspace);
+		return keyspace;
+	}
+
+	/*
+	 * Drops the run keyspaces of baseKeyspace beyond the newest `retention`, never `current`.
+	 * Returns right away, the drops finish in the background.
+	 */
+	public static void dropOld(Session session, String baseKeyspace, String current, int retention) {
+		String prefix = prefix(baseKeyspace);
+		List<String> runs = new ArrayList<>();
+		for (KeyspaceMetadata keyspace : session.getCluster().getMetadata().getKeyspaces()) {
+			if (keyspace.getName().startsWith(prefix)) {
+				runs.add(keyspace.getName());
+			}
+		}
+		Collections.sort(runs);
+		for (int i = 0; i < runs.size() - Math.max(1, retention); i++) {
+			String keyspace = runs.get(i);
+			if (keyspace.equals(current)) {
+				continue;
+			}
+			Futures.addCallback(session.executeAsync("DROP KEYSPACE IF EXISTS " + keyspace), new FutureCallback<ResultSet>() {
+				@Override
+				public void onSuccess(ResultSet result) {
+					logger.info("Dropped old run keyspace " + keyspace);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					logger.warn("Could not drop old run keyspace " + keyspace + ": " + t.getMessage());
+				}
+			});
+		}
+	}
+
+	private static String prefix(String baseKeyspace) {
+		String base = baseKeyspace.toLowerCase();
+		return (base.length() > MAX_BASE_LENGTH ? base.substring(0, MAX_BASE_LENGTH) : base) + "_run_";
+	}
+}
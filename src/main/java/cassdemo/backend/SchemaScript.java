@@ -0,0 +1,64 @@
+package cassdemo.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * A CQL schema script such as schema/schema.cql, split into statements, so that it can be
+ * applied to a keyspace of another name: the keyspace's replication settings are kept
+ * apart, CREATE KEYSPACE and USE are dropped from the statements, and the remaining table
+ * statements are expected to be unqualified.
+ */
+public class SchemaScript {
+
+	private static final Pattern CREATE_KEYSPACE = Pattern.compile("(?is)^CREATE\\s+KEYSPACE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?\\S+\\s+(WITH\\s+.*)$");
+
+	private final String keyspaceOptions;
+	private final List<String> statements;
+
+	private SchemaScript(String keyspaceOptions, List<String> statements) {
+		this.keyspaceOptions = keyspaceOptions;
+		this.statements = statements;
+	}
+
+	public static SchemaScript read(File file) throws IOException {
+		StringBuilder script = new StringBuilder();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!line.trim().startsWith("--")) {
+				script.append(line).append('\n');
+			}
+		}
+		String keyspaceOptions = null;
+		List<String> statements = new ArrayList<>();
+		for (String statement : script.toString().split(";")) {
+			String trimmed = statement.trim();
+			Matcher createKeyspace = CREATE_KEYSPACE.matcher(trimmed);
+			if (createKeyspace.matches()) {
+				keyspaceOptions = createKeyspace.group(1);
+			} else if (!trimmed.isEmpty() && !trimmed.toUpperCase().startsWith("USE ")) {
+				statements.add(trimmed);
+			}
+		}
+		if (keyspaceOptions == null) {
+			throw new IOException(file + " has no CREATE KEYSPACE statement");
+		}
+		return new SchemaScript(keyspaceOptions, Collections.unmodifiableList(statements));
+	}
+
+	/* The table statements, in script order. */
+	public List<String> getStatements() {
+		return statements;
+	}
+
+	/* CREATE KEYSPACE for `keyspace` with the script's replication settings. */
+	public String createKeyspace(String keyspace) {
+		return "CREATE KEYSPACE " + keyspace + " " + keyspaceOptions;
+	}
+}
@@ -0,0 +1,86 @@
+package cassdemo.backend;
+
+import cassdemo.metrics.LatencyHistogram;
+import com.codahale.metrics.Meter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Requests, failures and latency of one prepared statement, measured at the driver (below
+ * the concurrency limiter, so limiter queueing isn't included). Errors include timeouts.
+ */
+public class StatementMetrics implements StatementMetricsMBean {
+
+	private final String query;
+	private final Meter requests = new Meter();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	StatementMetrics(String query) {
+		this.query = query;
+	}
+
+	void succeeded(long nanos) {
+		requests.mark();
+		latency.recordNanos(nanos);
+	}
+
+	void failed(long nanos, boolean timeout) {
+		requests.mark();
+		latency.recordNanos(nanos);
+		errors.increment();
+		if (timeout) {
+			timeouts.increment();
+		}
+	}
+
+	@Override
+	public String getQuery() {
+		return query;
+	}
+
+	@Override
+	public long getRequests() {
+		return requests.getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public double getOneMinuteRate() {
+		return requests.getOneMinuteRate();
+	}
+
+	@Override
+	public double getMeanLatencyMicros() {
+		return latency.getMean();
+	}
+
+	@Override
+	public long getP50LatencyMicros() {
+		return latency.getPercentile(50);
+	}
+
+	@Override
+	public long getP99LatencyMicros() {
+		return latency.getPercentile(99);
+	}
+
+	@Override
+	public long getMaxLatencyMicros() {
+		return latency.getMax();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+}
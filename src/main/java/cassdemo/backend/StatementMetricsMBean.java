@@ -0,0 +1,22 @@
+package cassdemo.backend;
+
+/* JMX view of one prepared statement's StatementMetrics. */
+public interface StatementMetricsMBean {
+	String getQuery();
+
+	long getRequests();
+
+	long getErrors();
+
+	long getTimeouts();
+
+	double getOneMinuteRate();
+
+	double getMeanLatencyMicros();
+
+	long getP50LatencyMicros();
+
+	long getP99LatencyMicros();
+
+	long getMaxLatencyMicros();
+}
@@ -0,0 +1,69 @@
+package cassdemo.backend;
+
+import java.util.List;
+
+/*
+ * Result of a merged timeline read: the newest posts across all sources plus
+ * what each source (one partition) cost.
+ */
+public class Timeline {
+
+	private final List<Post> posts;
+	private final List<Source> sources;
+
+	Timeline(List<Post> posts, List<Source> sources) {
+		this.posts = posts;
+		this.sources = sources;
+	}
+
+	public List<Post> getPosts() {
+		return posts;
+	}
+
+	public List<Source> getSources() {
+		return sources;
+	}
+
+	public static class Source {
+		private final String name;
+		private final long firstPageMicros;
+		private final long totalMicros;
+		private final int pagesFetched;
+		private final int rowsUsed;
+
+		Source(String name, long firstPageMicros, long totalMicros, int pagesFetched, int rowsUsed) {
+			this.name = name;
+			this.firstPageMicros = firstPageMicros;
+			this.totalMicros = totalMicros;
+			this.pagesFetched = pagesFetched;
+			this.rowsUsed = rowsUsed;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/* latency of the initial fan-out request to this partition */
+		public long getFirstPageMicros() {
+			return firstPageMicros;
+		}
+
+		/* first page plus any further pages the merge had to wait for */
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+
+		public int getPagesFetched() {
+			return pagesFetched;
+		}
+
+		public int getRowsUsed() {
+			return rowsUsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: first page %d us, total %d us, %d pages, %d rows used", name, firstPageMicros, totalMicros, pagesFetched, rowsUsed);
+		}
+	}
+}
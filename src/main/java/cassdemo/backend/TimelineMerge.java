@@ -0,0 +1,122 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Fans out one query per partition (all sorted by createdAt DESC, then postId), then k-way
+ * merges the results with a heap in that same order, so posts sharing a timestamp always
+ * come back in the same order. Every partition is read in small pages and only the partitions that
+ * still hold one of the newest `limit` rows are paged further, so a partition stops being
+ * read as soon as the global top-N no longer needs it.
+ */
+class TimelineMerge {
+
+	private final Session session;
+	private final int limit;
+	private final List<SourceCursor> cursors = new ArrayList<>();
+
+	TimelineMerge(Session session, int limit) {
+		this.session = session;
+		this.limit = limit;
+	}
+
+	void addSource(String name, Statement statement) {
+		cursors.add(new SourceCursor(name, statement));
+	}
+
+	Timeline execute() {
+		int fetchSize = cursors.isEmpty() ? limit : Math.max(1, Math.min(limit, 2 * limit / cursors.size() + 1));
+		for (SourceCursor cursor : cursors) {
+			cursor.start(fetchSize);
+		}
+
+		PriorityQueue<SourceCursor> heads = new PriorityQueue<>(Math.max(1, cursors.size()), (a, b) -> {
+			int byTime = b.head.getTimestamp("createdAt").compareTo(a.head.getTimestamp("createdAt"));
+			return byTime != 0 ? byTime : BackendSession.compareUuids(a.head.getUUID("postId"), b.head.getUUID("postId"));
+		});
+		for (SourceCursor cursor : cursors) {
+			cursor.awaitFirstPage();
+			if (cursor.advance()) {
+				heads.add(cursor);
+			}
+		}
+
+		List<Post> posts = new ArrayList<>(limit);
+		while (posts.size() < limit && !heads.isEmpty()) {
+			SourceCursor cursor = heads.poll();
+			posts.add(Post.fromRow(cursor.head));
+			cursor.rowsUsed++;
+			if (posts.size() < limit && cursor.advance()) {
+				heads.add(cursor);
+			}
+		}
+
+		List<Timeline.Source> sources = new ArrayList<>(cursors.size());
+		for (SourceCursor cursor : cursors) {
+			sources.add(new Timeline.Source(cursor.name, cursor.firstPageNanos / 1000, cursor.totalNanos / 1000, cursor.pages, cursor.rowsUsed));
+		}
+		return new Timeline(posts, sources);
+	}
+
+	private class SourceCursor {
+		final String name;
+		final Statement statement;
+		ResultSetFuture future;
+		ResultSet rs;
+		Row head;
+		long startedAt;
+		volatile long firstPageNanos;
+		long totalNanos;
+		int pages;
+		int rowsUsed;
+
+		SourceCursor(String name, Statement statement) {
+			this.name = name;
+			this.statement = statement;
+		}
+
+		void start(int fetchSize) {
+			statement.setFetchSize(fetchSize);
+			startedAt = System.nanoTime();
+			future = session.executeAsync(statement);
+			future.addListener(() -> firstPageNanos = System.nanoTime() - startedAt, MoreExecutors.directExecutor());
+		}
+
+		void awaitFirstPage() {
+			rs = future.getUninterruptibly();
+			if (firstPageNanos == 0) {
+				// the completion listener may not have run yet on the driver's thread
+				firstPageNanos = System.nanoTime() - startedAt;
+			}
+			pages = 1;
+			totalNanos = firstPageNanos;
+		}
+
+		/* Moves head to the next row, fetching the next page only when this source is still needed. */
+		boolean advance() {
+			if (rs.getAvailableWithoutFetching() == 0) {
+				if (rs.isFullyFetched()) {
+					head = null;
+					return false;
+				}
+				// one() blocks on the next page here
+				long start = System.nanoTime();
+				head = rs.one();
+				totalNanos += System.nanoTime() - start;
+				pages++;
+			} else {
+				head = rs.one();
+			}
+			return head != null;
+		}
+	}
+}
@@ -0,0 +1,506 @@
+package cassdemo.backend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/*
+ * Local write-behind journal. Mutations are appended to memory-mapped segment files and
+ * acknowledged right away; a single drainer thread replays them to Cassandra in batches and
+ * checkpoints (segment, offset) after each batch that went through. Fully drained segments
+ * are deleted. When maxSegments segments are waiting, append() blocks for up to
+ * appendTimeout and then fails, which is the backpressure towards the callers.
+ *
+ * Record format: int length, int crc32 of the payload, payload. A zero length marks the end
+ * of the written part of a segment. On open the segments after the checkpoint are scanned
+ * and the first torn or corrupt record ends the log, so a crash loses at most the records
+ * being written at that moment. A failed replay is retried for the records the Replayer
+ * hands back, never for the whole batch. Replay is still at-least-once: a crash between a
+ * batch reaching Cassandra and its checkpoint replays that batch, which double counts
+ * counter updates.
+ *
+ * Durability is set by syncIntervalMillis. With 0 (group commit) append() returns only once
+ * a syncer thread has forced the record to disk; appends arriving during a force share the
+ * next one, so the cost per record drops as load rises, but every append waits for at
+ * least one msync. With a positive interval the syncer forces that often and append()
+ * returns right away: an OS crash or power loss loses up to one interval of acknowledged
+ * records. A negative interval never forces, records only survive a process crash.
+ */
+public class WriteBehindJournal implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+	private static final int RECORD_HEADER = 8;
+	private static final int END_MARKER = 4;
+	private static final long RETRY_BACKOFF_MILLIS = 500;
+
+	/*
+	 * Writes a batch and returns what of it still has to be written, empty when all of it
+	 * went through. Throwing means nothing of the batch was written.
+	 */
+	interface Replayer {
+		List<JournalRecord> replay(List<JournalRecord> batch);
+	}
+
+	private final File directory;
+	private final int segmentBytes;
+	private final int maxSegments;
+	private final long appendTimeoutNanos;
+	private final int batchSize;
+	private final long syncIntervalMillis;
+	private final Replayer replayer;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	private Segment active;
+	private int readPosition;
+
+	private final Thread drainer;
+	private final Thread syncer;
+	private volatile boolean running = true;
+
+	private final ReentrantLock syncLock = new ReentrantLock();
+	private final Condition syncNeeded = syncLock.newCondition();
+	private final Condition syncDone = syncLock.newCondition();
+	private long synced;
+
+	private final AtomicLong appended = new AtomicLong();
+	private final AtomicLong drained = new AtomicLong();
+	private final AtomicLong replayFailures = new AtomicLong();
+	private final AtomicLong syncs = new AtomicLong();
+
+	WriteBehindJournal(File directory, int segmentBytes, int maxSegments, long appendTimeoutMillis, int batchSize,
+			long syncIntervalMillis, Replayer replayer) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxSegments = maxSegments;
+		this.appendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(appendTimeoutMillis);
+		this.batchSize = batchSize;
+		this.syncIntervalMillis = syncIntervalMillis;
+		this.replayer = replayer;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create journal directory " + directory);
+		}
+		recover();
+
+		drainer = new Thread(this::drain, "journal-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+
+		if (syncIntervalMillis >= 0) {
+			syncer = new Thread(this::sync, "journal-syncer");
+			syncer.setDaemon(true);
+			syncer.start();
+		} else {
+			syncer = null;
+		}
+	}
+
+	/*
+	 * Appends the record, blocking while the journal is full and, with group commit, until
+	 * it is on disk. Once this returns the record will reach Cassandra eventually, even
+	 * across a restart.
+	 */
+	void append(JournalRecord record) throws BackendException {
+		byte[] payload = record.encode();
+		int needed = RECORD_HEADER + payload.length;
+		if (needed + END_MARKER > segmentBytes) {
+			throw new BackendException("Journal record of " + needed + " bytes doesn't fit in a segment");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		long sequence;
+		lock.lock();
+		try {
+			long remaining = appendTimeoutNanos;
+			while (active.writePosition + needed + END_MARKER > segmentBytes) {
+				if (segments.size() < maxSegments) {
+					active.sealed = true;
+					active = openSegment(active.sequence + 1);
+					segments.addLast(active);
+					continue;
+				}
+				if (remaining <= 0) {
+					throw new BackendException("Journal full, " + segments.size() + " segments waiting to be drained");
+				}
+				remaining = notFull.awaitNanos(remaining);
+			}
+
+			ByteBuffer buffer = active.buffer.duplicate();
+			buffer.position(active.writePosition);
+			buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).putInt(0);
+			active.writePosition += needed;
+			active.dirty = true;
+			sequence = appended.incrementAndGet();
+			notEmpty.signal();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BackendException("Interrupted while waiting for journal space", e);
+		} catch (IOException e) {
+			throw new BackendException("Could not rotate journal segment. " + e.getMessage() + ".", e);
+		} finally {
+			lock.unlock();
+		}
+		if (syncIntervalMillis == 0) {
+			awaitSynced(sequence);
+		}
+	}
+
+	private void awaitSynced(long sequence) throws BackendException {
+		syncLock.lock();
+		try {
+			syncNeeded.signal();
+			while (synced < sequence) {
+				if (!running) {
+					throw new BackendException("Journal closed before the record was synced");
+				}
+				syncDone.await(100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BackendException("Interrupted while waiting for the journal to sync", e);
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	private void sync() {
+		while (running) {
+			syncLock.lock();
+			try {
+				if (syncIntervalMillis == 0) {
+					while (running && synced == appended.get()) {
+						syncNeeded.await(100, TimeUnit.MILLISECONDS);
+					}
+				} else {
+					syncNeeded.await(syncIntervalMillis, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				syncLock.unlock();
+			}
+			forceDirty();
+		}
+	}
+
+	/* Forces every segment written since the last force, then releases the appends it covered. */
+	private void forceDirty() {
+		long target;
+		List<Segment> dirty = new ArrayList<>(2);
+		lock.lock();
+		try {
+			target = appended.get();
+			for (Segment segment : segments) {
+				if (segment.dirty) {
+					segment.dirty = false;
+					dirty.add(segment);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		try {
+			for (Segment segment : dirty) {
+				segment.buffer.force();
+			}
+		} catch (RuntimeException e) {
+			logger.error("Could not force journal segment to disk", e);
+			lock.lock();
+			try {
+				for (Segment segment : dirty) {
+					segment.dirty = true;
+				}
+			} finally {
+				lock.unlock();
+			}
+			return;
+		}
+		if (!dirty.isEmpty()) {
+			syncs.incrementAndGet();
+		}
+		syncLock.lock();
+		try {
+			synced = Math.max(synced, target);
+			syncDone.signalAll();
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	private void drain() {
+		while (running) {
+			Segment segment;
+			int start;
+			int end;
+			lock.lock();
+			try {
+				segment = segments.peekFirst();
+				while (running && !segment.sealed && readPosition == segment.writePosition) {
+					notEmpty.await(100, TimeUnit.MILLISECONDS);
+					segment = segments.peekFirst();
+				}
+				start = readPosition;
+				end = segment.writePosition;
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			List<JournalRecord> batch = new ArrayList<>(batchSize);
+			int position = start;
+			ByteBuffer buffer = segment.buffer.duplicate();
+			while (position < end && batch.size() < batchSize) {
+				int length = buffer.getInt(position);
+				buffer.position(position + RECORD_HEADER);
+				ByteBuffer payload = buffer.slice();
+				payload.limit(length);
+				batch.add(JournalRecord.decode(payload));
+				position += RECORD_HEADER + length;
+			}
+
+			if (!batch.isEmpty() && !replayWithRetry(batch)) {
+				return;
+			}
+			drained.addAndGet(batch.size());
+			advance(segment, position);
+		}
+	}
+
+	private boolean replayWithRetry(List<JournalRecord> batch) {
+		List<JournalRecord> pending = batch;
+		while (running) {
+			try {
+				pending = replayer.replay(pending);
+				if (pending.isEmpty()) {
+					return true;
+				}
+				logger.warn("Journal replay left " + pending.size() + " records, retrying them");
+			} catch (RuntimeException e) {
+				logger.warn("Journal replay failed, retrying: " + e.getMessage());
+			}
+			replayFailures.incrementAndGet();
+			try {
+				Thread.sleep(RETRY_BACKOFF_MILLIS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private void advance(Segment segment, int position) {
+		lock.lock();
+		try {
+			readPosition = position;
+			if (segment.sealed && position == segment.writePosition) {
+				segments.removeFirst();
+				readPosition = 0;
+				if (!segment.file.delete()) {
+					logger.warn("Could not delete drained journal segment " + segment.file);
+				}
+				notFull.signalAll();
+			}
+			writeCheckpoint(segments.peekFirst().sequence, readPosition);
+		} catch (IOException e) {
+			logger.error("Could not write journal checkpoint", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recover() throws IOException {
+		long checkpointSequence = 0;
+		int checkpointOffset = 0;
+		File checkpoint = new File(directory, CHECKPOINT);
+		if (checkpoint.exists()) {
+			String[] parts = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+			checkpointSequence = Long.parseLong(parts[0]);
+			checkpointOffset = Integer.parseInt(parts[1]);
+		}
+
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+		long[] sequences = files == null ? new long[0] : Arrays.stream(files).mapToLong(WriteBehindJournal::sequenceOf).sorted().toArray();
+		for (long sequence : sequences) {
+			if (sequence < checkpointSequence) {
+				segmentFile(sequence).delete();
+				continue;
+			}
+			Segment segment = openSegment(sequence);
+			segment.writePosition = scanEnd(segment.buffer);
+			segment.sealed = true;
+			segments.addLast(segment);
+		}
+
+		if (segments.isEmpty()) {
+			segments.addLast(openSegment(checkpointSequence));
+			checkpointOffset = 0;
+		}
+		active = segments.peekLast();
+		active.sealed = false;
+		readPosition = segments.peekFirst().sequence == checkpointSequence ? checkpointOffset : 0;
+
+		long pending = 0;
+		for (Segment segment : segments) {
+			pending += segment.writePosition;
+		}
+		if (pending - readPosition > 0) {
+			logger.info("Recovered journal with " + (pending - readPosition) + " bytes to replay");
+		}
+	}
+
+	/* Position right after the last intact record. */
+	private int scanEnd(MappedByteBuffer buffer) {
+		int position = 0;
+		while (position + RECORD_HEADER <= segmentBytes - END_MARKER) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || position + RECORD_HEADER + length + END_MARKER > segmentBytes) {
+				break;
+			}
+			byte[] payload = new byte[length];
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(position + RECORD_HEADER);
+			slice.get(payload);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+				break;
+			}
+			position += RECORD_HEADER + length;
+		}
+		return position;
+	}
+
+	private Segment openSegment(long sequence) throws IOException {
+		File file = segmentFile(sequence);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(segmentBytes);
+			return new Segment(sequence, file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+		}
+	}
+
+	private void writeCheckpoint(long sequence, int offset) throws IOException {
+		File temp = new File(directory, CHECKPOINT + ".tmp");
+		Files.write(temp.toPath(), (sequence + " " + offset).getBytes(StandardCharsets.UTF_8));
+		Files.move(temp.toPath(), new File(directory, CHECKPOINT).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File segmentFile(long sequence) {
+		return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+	}
+
+	private static long sequenceOf(File file) {
+		String name = file.getName();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	public long getAppended() {
+		return appended.get();
+	}
+
+	public long getDrained() {
+		return drained.get();
+	}
+
+	public long getReplayFailures() {
+		return replayFailures.get();
+	}
+
+	public long getSyncs() {
+		return syncs.get();
+	}
+
+	public int getSegments() {
+		lock.lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Waits up to timeout for everything appended so far to reach Cassandra.
+	 */
+	public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long target = appended.get();
+		while (drained.get() < target) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	/*
+	 * Stops the drainer and the syncer, forcing what was appended. Whatever wasn't replayed
+	 * yet stays on disk for the next start.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		drainer.interrupt();
+		if (syncer != null) {
+			syncer.interrupt();
+		}
+		try {
+			drainer.join();
+			if (syncer != null) {
+				syncer.join();
+				forceDirty();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("journal: appended=%d drained=%d segments=%d replayFailures=%d syncs=%d",
+				getAppended(), getDrained(), getSegments(), getReplayFailures(), getSyncs());
+	}
+
+	private static class Segment {
+		final long sequence;
+		final File file;
+		final MappedByteBuffer buffer;
+		int writePosition;
+		boolean sealed;
+		boolean dirty;
+
+		Segment(long sequence, File file, MappedByteBuffer buffer) {
+			this.sequence = sequence;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+}
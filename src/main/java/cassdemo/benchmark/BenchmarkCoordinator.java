@@ -0,0 +1,377 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.RunKeyspaces;
+import cassdemo.backend.SchemaScript;
+import cassdemo.metrics.CostAccumulator;
+import cassdemo.metrics.LatencyHistogram;
+import cassdemo.trace.TraceOp;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * Runs a benchmark across several BenchmarkWorker processes, so that a single client JVM
+ * isn't what limits the load. Takes the BenchmarkRunner options plus:
+ *
+ *   --workers N          spawn N worker JVMs on this machine (default 2)
+ *   --connect h:p,...    use workers started by hand instead
+ *   --interval S         seconds between progress lines (default 1)
+ *
+ * Threads, users and the target rate are split over the workers. Each worker warms up on
+ * its own, then they are started at the same wall clock instant, and their interval step
+ * histograms and counters are merged into one report with the same keys as a single
+ * process run, so the same baselines apply.
+ * Workers on other machines need synchronized clocks for the common start. Each worker sets
+ * up its own target post for the third and fourth scenario.
+ * With run_isolation the coordinator creates the run keyspace once and hands its name to
+ * every worker.
+ */
+public class BenchmarkCoordinator {
+
+	private static final long START_DELAY_MILLIS = 1000;
+
+	private final LatencyHistogram steps = new LatencyHistogram();
+	private final LatencyHistogram intervalSteps = new LatencyHistogram();
+	private final OperationStats operations = new OperationStats();
+	private final CostAccumulator stepCosts = new CostAccumulator();
+	private final Map<TraceOp, CostAccumulator> operationCosts = new EnumMap<>(TraceOp.class);
+	private final List<WorkerLink> links = new ArrayList<>();
+	private final List<Process> processes = new ArrayList<>();
+	private Cluster cluster;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options;
+		try {
+			options = BenchmarkRunner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		BenchmarkCoordinator coordinator = new BenchmarkCoordinator();
+		int status;
+		try {
+			status = coordinator.run(options);
+		} catch (IOException | BackendException e) {
+			System.err.println("Distributed run failed: " + e.getMessage());
+			status = 1;
+		} finally {
+			coordinator.stopWorkers();
+		}
+		System.exit(status);
+	}
+
+	private int run(Map<String, String> options) throws IOException, InterruptedException, BackendException {
+		Properties properties = BenchmarkRunner.loadProperties(options.get("config"));
+		if (options.containsKey("read-cl")) {
+			properties.setProperty("read_consistency", options.get("read-cl"));
+		}
+		if (options.containsKey("write-cl")) {
+			properties.setProperty("write_consistency", options.get("write-cl"));
+		}
+		if (Boolean.parseBoolean(properties.getProperty("run_isolation", "false"))) {
+			properties.setProperty("keyspace", createRunKeyspace(properties));
+			properties.setProperty("run_isolation", "false");
+		}
+		String scenario = options.getOrDefault("scenario", "fifth");
+		int threads = Integer.parseInt(options.getOrDefault("threads", "50"));
+		int users = Math.max(threads, Integer.parseInt(options.getOrDefault("users", String.valueOf(threads))));
+		long warmup = Long.parseLong(options.getOrDefault("warmup", "30"));
+		long duration = Long.parseLong(options.getOrDefault("duration", "10"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+		long intervalMillis = (long) (Double.parseDouble(options.getOrDefault("interval", "1")) * 1000);
+
+		List<String> addresses = new ArrayList<>();
+		if (options.containsKey("connect")) {
+			for (String address : options.get("connect").split(",")) {
+				addresses.add(address.trim());
+			}
+		} else {
+			int workers = Integer.parseInt(options.getOrDefault("workers", "2"));
+			for (int i = 0; i < workers; i++) {
+				addresses.add("127.0.0.1:" + spawnWorker(i));
+			}
+		}
+
+		int workers = addresses.size();
+		for (int i = 0; i < workers; i++) {
+			int workerThreads = threads / workers + (i < threads % workers ? 1 : 0);
+			if (workerThreads == 0) {
+				continue;
+			}
+			int workerUsers = users / workers + (i < users % workers ? 1 : 0);
+			WorkerLink link = new WorkerLink(i, addresses.get(i));
+			link.configure(scenario, workerThreads, workerUsers, warmup, duration, rate * workerThreads / threads, intervalMillis,
+					workerProperties(properties, i));
+			links.add(link);
+		}
+		for (WorkerLink link : links) {
+			link.awaitReady();
+		}
+
+		long startAt = System.currentTimeMillis() + START_DELAY_MILLIS;
+		for (WorkerLink link : links) {
+			link.start(startAt);
+		}
+		System.out.printf("%d workers ready, starting %d threads%n", links.size(), threads);
+
+		long started = System.nanoTime();
+		Thread.sleep(START_DELAY_MILLIS);
+		while (!finished()) {
+			Thread.sleep(intervalMillis);
+			printInterval((System.nanoTime() - started) / 1_000_000_000L - START_DELAY_MILLIS / 1000, intervalMillis);
+		}
+		for (WorkerLink link : links) {
+			link.reader.join();
+			if (link.failure != null) {
+				throw new IOException("worker " + link.index + ": " + link.failure);
+			}
+		}
+
+		long elapsed = 0;
+		long errors = 0;
+		long timeouts = 0;
+		long anomalies = 0;
+		for (WorkerLink link : links) {
+			elapsed = Math.max(elapsed, link.elapsedNanos);
+			errors += link.errors;
+			timeouts += link.timeouts;
+			anomalies += link.anomalies;
+		}
+		BenchmarkReport report = BenchmarkRunner.report(threads, rate, elapsed, steps, operations, errors, timeouts, anomalies,
+				operationCosts, stepCosts);
+		report.put("workers", links.size());
+		report.put("keyspace", properties.getProperty("keyspace", ""));
+		report.put("scenario", scenario);
+		report.put("read_consistency", properties.getProperty("read_consistency", ""));
+		report.put("write_consistency", properties.getProperty("write_consistency", ""));
+		return BenchmarkRunner.publish(report, options);
+	}
+
+	private boolean finished() {
+		for (WorkerLink link : links) {
+			if (link.reader.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void printInterval(long second, long intervalMillis) {
+		LatencyHistogram interval = intervalSteps.getAndReset();
+		long errors = 0;
+		long operationCount = 0;
+		for (WorkerLink link : links) {
+			errors += link.errors;
+			operationCount += link.operations;
+		}
+		System.out.printf("[%4ds] steps/s=%.0f p50=%dus p99=%dus max=%dus operations=%d errors=%d%n",
+				second, interval.getCount() * 1000.0 / intervalMillis, interval.getPercentile(50),
+				interval.getPercentile(99), interval.getMax(), operationCount, errors);
+	}
+
+	/*
+	 * The cluster stays open until the run ends so the background drops of old run
+	 * keyspaces can finish.
+	 */
+	private String createRunKeyspace(Properties properties) throws IOException, BackendException {
+		SchemaScript schema = SchemaScript.read(new File(properties.getProperty("run_schema", "schema/schema.cql")));
+		String keyspace = properties.getProperty("keyspace");
+		cluster = Cluster.builder().addContactPoint(properties.getProperty("contact_point")).build();
+		String runKeyspace = RunKeyspaces.create(cluster, schema, keyspace);
+		Session session;
+		try {
+			session = cluster.connect();
+		} catch (Exception e) {
+			throw new BackendException("Could not connect to the cluster. " + e.getMessage() + ".", e);
+		}
+		RunKeyspaces.dropOld(session, keyspace, runKeyspace, Integer.parseInt(properties.getProperty("run_keyspace_retention", "2")));
+		System.out.println("Run keyspace " + runKeyspace);
+		return runKeyspace;
+	}
+
+	/* Keeps the workers from sharing an event log, a journal or a metrics port. */
+	private static Properties workerProperties(Properties properties, int index) {
+		Properties copy = new Properties();
+		copy.putAll(properties);
+		String events = properties.getProperty("events_file", "events.log");
+		int dot = events.lastIndexOf('.');
+		copy.setProperty("events_file", dot > 0
+				? events.substring(0, dot) + "-worker" + index + events.substring(dot)
+				: events + "-worker" + index);
+		copy.setProperty("journal_dir", properties.getProperty("journal_dir", "journal") + "-worker" + index);
+		copy.setProperty("trace_file", "");
+		int metricsPort = Integer.parseInt(properties.getProperty("metrics_http_port", "-1"));
+		if (metricsPort > 0) {
+			copy.setProperty("metrics_http_port", Integer.toString(metricsPort + 1 + index));
+		}
+		return copy;
+	}
+
+	/* Starts a worker JVM with this classpath and returns the port it listens on. */
+	private int spawnWorker(int index) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				BenchmarkWorker.class.getName(), "--port", "0");
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+		processes.add(process);
+
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = output.readLine()) != null && !line.startsWith("LISTENING ")) {
+			System.out.println("[worker " + index + "] " + line);
+		}
+		if (line == null) {
+			throw new IOException("worker " + index + " exited before listening");
+		}
+		Thread forwarder = new Thread(() -> {
+			try {
+				String next;
+				while ((next = output.readLine()) != null) {
+					System.out.println("[worker " + index + "] " + next);
+				}
+			} catch (IOException e) {
+				// worker is gone
+			}
+		}, "worker-output-" + index);
+		forwarder.setDaemon(true);
+		forwarder.start();
+		return Integer.parseInt(line.substring("LISTENING ".length()).trim());
+	}
+
+	private void stopWorkers() {
+		for (WorkerLink link : links) {
+			link.closeQuietly();
+		}
+		for (Process process : processes) {
+			process.destroy();
+		}
+		if (cluster != null) {
+			cluster.close();
+		}
+	}
+
+	private class WorkerLink {
+		final int index;
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+		final Thread reader;
+
+		// written by the reader thread, read for progress lines and the final report
+		volatile long errors;
+		volatile long timeouts;
+		volatile long anomalies;
+		volatile long operations;
+		volatile long elapsedNanos;
+		volatile String failure;
+
+		WorkerLink(int index, String address) throws IOException {
+			this.index = index;
+			int colon = address.lastIndexOf(':');
+			this.socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+			socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.reader = new Thread(this::read, "worker-link-" + index);
+		}
+
+		void configure(String scenario, int threads, int users, long warmup, long duration, double rate, long intervalMillis,
+				Properties properties) throws IOException {
+			out.writeByte(BenchmarkWorker.CONFIGURE);
+			out.writeUTF(scenario);
+			out.writeInt(threads);
+			out.writeInt(users);
+			out.writeLong(warmup);
+			out.writeLong(duration);
+			out.writeDouble(rate);
+			out.writeLong(intervalMillis);
+			out.writeInt(properties.size());
+			for (String key : properties.stringPropertyNames()) {
+				out.writeUTF(key);
+				out.writeUTF(properties.getProperty(key));
+			}
+			out.flush();
+		}
+
+		void awaitReady() throws IOException {
+			byte type = in.readByte();
+			if (type == BenchmarkWorker.FAILED) {
+				throw new IOException("worker " + index + " failed to set up: " + in.readUTF());
+			}
+			if (type != BenchmarkWorker.READY) {
+				throw new IOException("worker " + index + " sent " + type + " instead of READY");
+			}
+		}
+
+		void start(long startAt) throws IOException {
+			out.writeByte(BenchmarkWorker.START);
+			out.writeLong(startAt);
+			out.flush();
+			reader.start();
+		}
+
+		private void read() {
+			try {
+				while (true) {
+					byte type = in.readByte();
+					if (type == BenchmarkWorker.INTERVAL) {
+						errors = in.readLong();
+						timeouts = in.readLong();
+						anomalies = in.readLong();
+						operations = in.readLong();
+						LatencyHistogram interval = BenchmarkWorker.readHistogram(in);
+						steps.merge(interval);
+						intervalSteps.merge(interval);
+					} else if (type == BenchmarkWorker.RESULT) {
+						long elapsed = in.readLong();
+						int count = in.readInt();
+						for (int i = 0; i < count; i++) {
+							BenchmarkCoordinator.this.operations.get(TraceOp.valueOf(in.readUTF())).merge(BenchmarkWorker.readHistogram(in));
+						}
+						BenchmarkWorker.readCost(in, stepCosts);
+						int costCount = in.readInt();
+						for (int i = 0; i < costCount; i++) {
+							TraceOp op = TraceOp.valueOf(in.readUTF());
+							synchronized (operationCosts) {
+								BenchmarkWorker.readCost(in, operationCosts.computeIfAbsent(op, o -> new CostAccumulator()));
+							}
+						}
+						elapsedNanos = elapsed;
+						return;
+					} else {
+						failure = "unexpected message " + type;
+						return;
+					}
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				failure = String.valueOf(e.getMessage());
+			}
+		}
+
+		void closeQuietly() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package cassdemo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Result of one benchmark run: a flat, ordered set of named values (numbers or strings),
+ * written as a single JSON object and as a two column CSV. Keeping it flat means a stored
+ * baseline can be read back without a JSON library.
+ */
+public class BenchmarkReport {
+
+	private static final Pattern ENTRY = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|[-+0-9.eE]+)");
+
+	// metrics checked against the baseline; true when a higher value is better
+	private static final Map<String, Boolean> GATED = new LinkedHashMap<>();
+
+	static {
+		GATED.put("throughput_steps_per_s", true);
+		GATED.put("step_latency_p50_us", false);
+		GATED.put("step_latency_p99_us", false);
+		GATED.put("error_rate", false);
+		GATED.put("anomaly_rate", false);
+		GATED.put("step_bytes_per_op", false);
+	}
+
+	// rates below this are treated as noise rather than regressions
+	private static final double RATE_FLOOR = 0.001;
+
+	private final Map<String, Object> values = new LinkedHashMap<>();
+
+	public void put(String key, Object value) {
+		values.put(key, value);
+	}
+
+	public Object get(String key) {
+		return values.get(key);
+	}
+
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+	public String toJson() {
+		StringBuilder builder = new StringBuilder("{\n");
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			builder.append("  ").append(quote(entry.getKey())).append(": ");
+			Object value = entry.getValue();
+			builder.append(value instanceof Number ? number((Number) value) : quote(String.valueOf(value)));
+			builder.append(++i < values.size() ? ",\n" : "\n");
+		}
+		return builder.append("}\n").toString();
+	}
+
+	public String toCsv() {
+		StringBuilder builder = new StringBuilder("metric,value\n");
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			Object value = entry.getValue();
+			builder.append(entry.getKey()).append(',')
+					.append(value instanceof Number ? number((Number) value) : csv(String.valueOf(value)))
+					.append('\n');
+		}
+		return builder.toString();
+	}
+
+	public void write(File json, File csv) throws IOException {
+		Files.write(json.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+		Files.write(csv.toPath(), toCsv().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/* Reads a report written by toJson(); numbers come back as Double. */
+	public static BenchmarkReport read(File json) throws IOException {
+		String text = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+		BenchmarkReport report = new BenchmarkReport();
+		Matcher matcher = ENTRY.matcher(text);
+		while (matcher.find()) {
+			String value = matcher.group(2);
+			report.put(unquote(matcher.group(1)), value.startsWith("\"")
+					? unquote(value.substring(1, value.length() - 1))
+					: Double.valueOf(value));
+		}
+		return report;
+	}
+
+	/*
+	 * Gated metrics that got worse than the baseline by more than thresholdPercent, one
+	 * description each. Metrics missing from either report are skipped.
+	 */
+	public List<String> regressionsAgainst(BenchmarkReport baseline, double thresholdPercent) {
+		List<String> regressions = new ArrayList<>();
+		double factor = thresholdPercent / 100.0;
+		for (Map.Entry<String, Boolean> gated : GATED.entrySet()) {
+			String key = gated.getKey();
+			if (!(values.get(key) instanceof Number) || !(baseline.values.get(key) instanceof Number)) {
+				continue;
+			}
+			double current = ((Number) values.get(key)).doubleValue();
+			double expected = ((Number) baseline.values.get(key)).doubleValue();
+			boolean worse;
+			if (gated.getValue()) {
+				worse = current < expected * (1 - factor);
+			} else if (key.endsWith("_rate")) {
+				worse = current > expected * (1 + factor) && current - expected > RATE_FLOOR;
+			} else {
+				worse = current > expected * (1 + factor);
+			}
+			if (worse) {
+				regressions.add(String.format("%s: %s, baseline %s (threshold %.1f%%)",
+						key, number(current), number(expected), thresholdPercent));
+			}
+		}
+		return regressions;
+	}
+
+	private static String number(Number value) {
+		if (value instanceof Double || value instanceof Float) {
+			double d = value.doubleValue();
+			return d == Math.rint(d) && !Double.isInfinite(d) ? Long.toString((long) d) : String.format(Locale.ROOT, "%.4f", d);
+		}
+		return value.toString();
+	}
+
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static String unquote(String text) {
+		return text.replace("\\\"", "\"").replace("\\\\", "\\");
+	}
+
+	private static String csv(String text) {
+		return text.contains(",") || text.contains("\"") ? "\"" + text.replace("\"", "\"\"") + "\"" : text;
+	}
+}
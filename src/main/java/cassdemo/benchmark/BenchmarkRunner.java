@@ -0,0 +1,562 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.ConcurrencyLimiter;
+import cassdemo.backend.HotKeyTracker;
+import cassdemo.backend.OperationCosts;
+import cassdemo.backend.QueryTraceSampler;
+import cassdemo.events.EventSink;
+import cassdemo.metrics.CostAccumulator;
+import cassdemo.metrics.LatencyHistogram;
+import cassdemo.metrics.ThreadCosts;
+import cassdemo.monitoring.MetricsPublisher;
+import cassdemo.scenarios.*;
+import cassdemo.trace.TraceOp;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Non-interactive entry point: runs one scenario for a fixed time, writes a JSON and a CSV
+ * report and optionally fails the build when the run regressed against a stored baseline.
+ *
+ *   --scenario first|second|third|fourth|fifth   (default fifth)
+ *   --threads N            worker threads (default 50)
+ *   --users N              scenario users created up front, workers take turns acting as
+ *                          them (default: one per thread)
+ *   --warmup S             at most S seconds of unmeasured load until throughput is steady
+ *                          (default 30, 0 = none)
+ *   --duration S           measured seconds (default 10)
+ *   --rate R               steps per second over all workers, 0 = as fast as possible
+ *   --read-cl / --write-cl consistency level overriding every read / write statement
+ *   --config FILE          properties file instead of the bundled config.properties
+ *   --report PREFIX        writes PREFIX.json and PREFIX.csv (default benchmark)
+ *   --baseline FILE        report JSON to compare against
+ *   --threshold PCT        allowed regression in percent (default 10)
+ *
+ * Exit status: 0 ok, 1 bad arguments or setup failure, 2 regression against the baseline.
+ *
+ * With a target rate each worker follows a fixed schedule and latency is measured from the
+ * scheduled start of a step, so a stalled cluster shows up as latency instead of as
+ * quietly reduced load.
+ */
+public class BenchmarkRunner {
+
+	private static final String PROPERTIES_FILENAME = "config.properties";
+	private static final int REPORTED_HOT_KEYS = 3;
+	private static final int REPORTED_SLOW_STAGES = 3;
+
+	private static final long WARMUP_WINDOW_MILLIS = 1000;
+	private static final int WARMUP_WINDOWS = 3;
+	private static final double WARMUP_TOLERANCE = 0.1;
+
+	private final BackendSession session;
+	private final SteppedScenario scenario;
+	private final int threads;
+	private final int population;
+	private final long durationNanos;
+	private final double rate;
+
+	private final OperationStats operations = new OperationStats();
+	private final LatencyHistogram steps = new LatencyHistogram();
+	private final LatencyHistogram intervalSteps = new LatencyHistogram();
+	// users not acting right now; a worker takes one per step and puts it back afterwards
+	private final Queue<ScenarioUser> users = new ConcurrentLinkedQueue<>();
+	private final CostAccumulator stepCosts = new CostAccumulator();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong anomalies = new AtomicLong();
+	private final AtomicLong provisionFailures = new AtomicLong();
+	private volatile long deadline;
+
+	public BenchmarkRunner(BackendSession session, SteppedScenario scenario, int threads, long durationSeconds, double rate) {
+		this(session, scenario, threads, threads, durationSeconds, rate);
+	}
+
+	/* population is the number of users the workers take turns acting as, at least threads. */
+	public BenchmarkRunner(BackendSession session, SteppedScenario scenario, int threads, int population, long durationSeconds, double rate) {
+		this.session = session;
+		this.scenario = scenario;
+		this.threads = threads;
+		this.population = Math.max(threads, population);
+		this.durationNanos = durationSeconds * 1_000_000_000L;
+		this.rate = rate;
+		session.addOperationListener(operations);
+	}
+
+	/*
+	 * Creates the user population, `threads` users at a time, so that user creation isn't part
+	 * of the measured run. Users that can't be created are counted as provisioning failures;
+	 * with fewer users than threads, only as many workers run as there are users.
+	 */
+	public void prepare() throws InterruptedException {
+		ExecutorService provisioners = Executors.newFixedThreadPool(Math.min(threads, population));
+		for (int i = 0; i < population; i++) {
+			provisioners.execute(() -> {
+				ScenarioUser user = ScenarioUser.random();
+				try {
+					user.register(session);
+					users.add(user);
+				} catch (BackendException | RuntimeException e) {
+					provisionFailures.incrementAndGet();
+					EventSink.get().error("[%s] could not create user: %s", user.getUserId(), e.getMessage());
+				}
+			});
+		}
+		provisioners.shutdown();
+		provisioners.awaitTermination(1, TimeUnit.HOURS);
+	}
+
+	/*
+	 * Runs the operation mix until step throughput is steady, i.e. the last WARMUP_WINDOWS
+	 * one-second windows are within WARMUP_TOLERANCE of their mean, or for at most maxSeconds.
+	 * Then resets every statistic the report is built from, so that JIT compilation,
+	 * connection setup and cold caches stay out of the measured run. Returns the warmup time
+	 * in nanoseconds.
+	 */
+	public long warmup(long maxSeconds) throws InterruptedException {
+		if (maxSeconds <= 0) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		deadline = start + maxSeconds * 1_000_000_000L;
+		List<Thread> workers = startWorkers(start);
+		Deque<Long> windows = new ArrayDeque<>();
+		long previous = 0;
+		while (System.nanoTime() < deadline) {
+			Thread.sleep(WARMUP_WINDOW_MILLIS);
+			long count = steps.getCount();
+			windows.addLast(count - previous);
+			previous = count;
+			if (windows.size() > WARMUP_WINDOWS) {
+				windows.removeFirst();
+			}
+			if (windows.size() == WARMUP_WINDOWS && steady(windows)) {
+				deadline = System.nanoTime();
+			}
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		resetStatistics();
+		return System.nanoTime() - start;
+	}
+
+	private static boolean steady(Collection<Long> windows) {
+		long min = Collections.min(windows);
+		long max = Collections.max(windows);
+		double mean = windows.stream().mapToLong(Long::longValue).average().orElse(0);
+		return mean > 0 && max - min <= WARMUP_TOLERANCE * mean;
+	}
+
+	private void resetStatistics() {
+		steps.reset();
+		intervalSteps.reset();
+		operations.reset();
+		stepCosts.reset();
+		errors.set(0);
+		timeouts.set(0);
+		anomalies.set(0);
+		if (session.getOperationCosts() != null) {
+			session.getOperationCosts().reset();
+		}
+		if (session.getHotKeys() != null) {
+			session.getHotKeys().reset();
+		}
+		if (session.getQueryTraces() != null) {
+			session.getQueryTraces().reset();
+		}
+	}
+
+	/*
+	 * Runs the workers from start (a System.nanoTime() value, possibly in the future) for the
+	 * configured duration and returns the wall time of the measured run in nanoseconds.
+	 */
+	public long run(long start) throws InterruptedException {
+		long wait = start - System.nanoTime();
+		if (wait > 0) {
+			LockSupport.parkNanos(wait);
+		}
+		deadline = start + durationNanos;
+		for (Thread worker : startWorkers(start)) {
+			worker.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private List<Thread> startWorkers(long start) {
+		List<Thread> workers = new ArrayList<>();
+		int count = Math.min(threads, users.size());
+		for (int i = 0; i < count; i++) {
+			Thread worker = new Thread(() -> work(start, count), "benchmark-" + i);
+			workers.add(worker);
+			worker.start();
+		}
+		return workers;
+	}
+
+	private void work(long start, int workers) {
+		long interval = rate > 0 ? (long) (1_000_000_000L * workers / rate) : 0;
+		// spread the workers over one interval instead of firing them all at once
+		long scheduled = start + (interval > 0 ? (long) (Math.random() * interval) : 0);
+		while (true) {
+			long now = System.nanoTime();
+			if (interval > 0) {
+				if (scheduled >= deadline) {
+					break;
+				}
+				if (scheduled > now) {
+					LockSupport.parkNanos(scheduled - now);
+				}
+			} else if (now >= deadline) {
+				break;
+			}
+			long stepStart = interval > 0 ? scheduled : System.nanoTime();
+			boolean measureCosts = session.getOperationCosts() != null;
+			long bytes = measureCosts ? ThreadCosts.allocatedBytes() : 0;
+			long cpu = measureCosts ? ThreadCosts.cpuNanos() : 0;
+			// never empty: there are at least as many users as workers and each holds one at most
+			ScenarioUser user = users.poll();
+			try {
+				if (!scenario.step(user)) {
+					anomalies.incrementAndGet();
+				}
+			} catch (BackendException | RuntimeException e) {
+				failed(e);
+			} finally {
+				users.add(user);
+			}
+			long latency = System.nanoTime() - stepStart;
+			if (measureCosts) {
+				stepCosts.add(ThreadCosts.allocatedBytes() - bytes, ThreadCosts.cpuNanos() - cpu);
+			}
+			steps.recordNanos(latency);
+			intervalSteps.recordNanos(latency);
+			scheduled += interval;
+		}
+	}
+
+	private void failed(Throwable e) {
+		errors.incrementAndGet();
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof OperationTimedOutException || cause instanceof ReadTimeoutException
+					|| cause instanceof WriteTimeoutException) {
+				timeouts.incrementAndGet();
+				return;
+			}
+		}
+	}
+
+	/* Step latencies recorded since the previous call. */
+	public LatencyHistogram takeIntervalSteps() {
+		return intervalSteps.getAndReset();
+	}
+
+	public OperationStats getOperations() {
+		return operations;
+	}
+
+	/* Null unless the session does cost accounting. */
+	public Map<TraceOp, CostAccumulator> getOperationCosts() {
+		OperationCosts costs = session.getOperationCosts();
+		if (costs == null) {
+			return null;
+		}
+		Map<TraceOp, CostAccumulator> byOp = new EnumMap<>(TraceOp.class);
+		for (TraceOp op : TraceOp.values()) {
+			byOp.put(op, costs.get(op));
+		}
+		return byOp;
+	}
+
+	public CostAccumulator getStepCosts() {
+		return stepCosts;
+	}
+
+	public long getSteps() {
+		return steps.getCount();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getAnomalies() {
+		return anomalies.get();
+	}
+
+	public long getProvisionFailures() {
+		return provisionFailures.get();
+	}
+
+	public BenchmarkReport report(long elapsedNanos) {
+		BenchmarkReport report = report(threads, rate, elapsedNanos, steps, operations, errors.get(), timeouts.get(), anomalies.get(),
+				getOperationCosts(), stepCosts);
+		report.put("keyspace", session.getKeyspace());
+		report.put("users", population);
+		report.put("provision_failures", provisionFailures.get());
+		putLimiter(report, session.getReadLimiter());
+		putLimiter(report, session.getWriteLimiter());
+		putHotKeys(report, session.getHotKeys());
+		putPartitionHealth(report, session.getQueryTraces());
+		return report;
+	}
+
+	/* operationCosts may be null; costs only appear in the report when they were measured. */
+	static BenchmarkReport report(int threads, double rate, long elapsedNanos, LatencyHistogram steps, OperationStats operations,
+			long errors, long timeouts, long anomalies, Map<TraceOp, CostAccumulator> operationCosts, CostAccumulator stepCosts) {
+		double seconds = elapsedNanos / 1e9;
+		long stepCount = steps.getCount();
+		BenchmarkReport report = new BenchmarkReport();
+		report.put("threads", threads);
+		report.put("duration_s", seconds);
+		report.put("target_rate", rate);
+		report.put("steps", stepCount);
+		report.put("throughput_steps_per_s", stepCount / seconds);
+		report.put("operations", operations.getCount());
+		report.put("throughput_ops_per_s", operations.getCount() / seconds);
+		report.put("errors", errors);
+		report.put("timeouts", timeouts);
+		report.put("anomalies", anomalies);
+		report.put("error_rate", stepCount == 0 ? 0.0 : (double) errors / stepCount);
+		report.put("anomaly_rate", stepCount == 0 ? 0.0 : (double) anomalies / stepCount);
+		putLatency(report, "step_latency", steps);
+		if (stepCosts.getCount() > 0) {
+			report.put("step_bytes_per_op", stepCosts.getBytesPerOp());
+			report.put("step_cpu_us_per_op", stepCosts.getCpuMicrosPerOp());
+		}
+		for (TraceOp op : TraceOp.values()) {
+			LatencyHistogram histogram = operations.get(op);
+			if (histogram.getCount() > 0) {
+				String prefix = "op." + op.name().toLowerCase();
+				report.put(prefix + ".count", histogram.getCount());
+				putLatency(report, prefix, histogram);
+				CostAccumulator cost = operationCosts == null ? null : operationCosts.get(op);
+				if (cost != null && cost.getCount() > 0) {
+					report.put(prefix + ".bytes_per_op", cost.getBytesPerOp());
+					report.put(prefix + ".cpu_us_per_op", cost.getCpuMicrosPerOp());
+				}
+			}
+		}
+		return report;
+	}
+
+	private static void putLatency(BenchmarkReport report, String prefix, LatencyHistogram histogram) {
+		report.put(prefix + "_p50_us", histogram.getPercentile(50));
+		report.put(prefix + "_p90_us", histogram.getPercentile(90));
+		report.put(prefix + "_p99_us", histogram.getPercentile(99));
+		report.put(prefix + "_p999_us", histogram.getPercentile(99.9));
+		report.put(prefix + "_max_us", histogram.getMax());
+		report.put(prefix + "_mean_us", histogram.getMean());
+	}
+
+	private static void putHotKeys(BenchmarkReport report, HotKeyTracker hotKeys) {
+		if (hotKeys == null) {
+			return;
+		}
+		for (String table : hotKeys.getTables()) {
+			int rank = 0;
+			for (HotKeyTracker.HotKey hotKey : hotKeys.getHotKeys(table)) {
+				if (++rank > REPORTED_HOT_KEYS) {
+					break;
+				}
+				String prefix = "hot." + table + "." + rank;
+				report.put(prefix + ".key", String.valueOf(hotKey.getKey()));
+				report.put(prefix + ".count", hotKey.getCount());
+				report.put(prefix + ".per_s", hotKey.getPerSecond());
+				report.put(prefix + ".share", hotKey.getShare());
+			}
+		}
+	}
+
+	private static void putPartitionHealth(BenchmarkReport report, QueryTraceSampler traces) {
+		if (traces == null) {
+			return;
+		}
+		report.put("traces.dropped", traces.getDropped());
+		for (String table : traces.getTables()) {
+			QueryTraceSampler.TableHealth health = traces.get(table);
+			String prefix = "traces." + table;
+			report.put(prefix + ".traced", health.getTraced());
+			report.put(prefix + ".live_rows", health.getLiveRows());
+			report.put(prefix + ".tombstone_cells", health.getTombstoneCells());
+			if (health.getLiveRows() > 0) {
+				report.put(prefix + ".tombstones_per_live", health.getTombstonesPerLiveRow());
+			}
+			report.put(prefix + ".sstables_per_read", health.getSstablesPerRead());
+			report.put(prefix + ".replicas_per_read", health.getReplicasPerRead());
+			report.put(prefix + ".warnings", health.getWarnings());
+			int rank = 0;
+			for (Map.Entry<String, LatencyHistogram> stage : health.getSlowestStages(REPORTED_SLOW_STAGES)) {
+				String stagePrefix = prefix + ".stage." + ++rank;
+				report.put(stagePrefix + ".name", stage.getKey());
+				report.put(stagePrefix + ".mean_us", stage.getValue().getMean());
+				report.put(stagePrefix + ".p99_us", stage.getValue().getPercentile(99));
+			}
+		}
+	}
+
+	private static void putLimiter(BenchmarkReport report, ConcurrencyLimiter limiter) {
+		if (limiter == null) {
+			return;
+		}
+		String prefix = "limiter." + limiter.getName();
+		report.put(prefix + ".limit", limiter.getLimit());
+		report.put(prefix + ".rejected", limiter.getRejected());
+		report.put(prefix + ".timeouts", limiter.getTimeouts());
+		report.put(prefix + ".avg_queue_delay_us", limiter.getAverageQueueDelayMicros());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options;
+		try {
+			options = parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		Properties properties = loadProperties(options.get("config"));
+		if (options.containsKey("read-cl")) {
+			properties.setProperty("read_consistency", options.get("read-cl"));
+		}
+		if (options.containsKey("write-cl")) {
+			properties.setProperty("write_consistency", options.get("write-cl"));
+		}
+		String scenarioName = options.getOrDefault("scenario", "fifth");
+		int threads = Integer.parseInt(options.getOrDefault("threads", "50"));
+		int users = Integer.parseInt(options.getOrDefault("users", String.valueOf(threads)));
+		long warmup = Long.parseLong(options.getOrDefault("warmup", "30"));
+		long duration = Long.parseLong(options.getOrDefault("duration", "10"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+
+		EventSink.install(EventSink.fromProperties(properties));
+		int status;
+		try {
+			BackendSession session = new BackendSession(properties.getProperty("contact_point"), properties.getProperty("keyspace"), properties);
+			MetricsPublisher.start(session, properties);
+			BenchmarkRunner runner = new BenchmarkRunner(session, createScenario(scenarioName, session), threads, users, duration, rate);
+			runner.prepare();
+			long warmupNanos = runner.warmup(warmup);
+			long elapsed = runner.run(System.nanoTime());
+
+			BenchmarkReport report = runner.report(elapsed);
+			report.put("warmup_s", warmupNanos / 1e9);
+			report.put("scenario", scenarioName);
+			report.put("read_consistency", properties.getProperty("read_consistency", ""));
+			report.put("write_consistency", properties.getProperty("write_consistency", ""));
+			status = publish(report, options);
+		} catch (BackendException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			status = 1;
+		}
+		System.out.println(EventSink.get());
+		EventSink.get().close();
+		System.exit(status);
+	}
+
+	/*
+	 * Writes the report files, prints the report and compares it against --baseline if given.
+	 * Returns the exit status.
+	 */
+	static int publish(BenchmarkReport report, Map<String, String> options) throws IOException {
+		String reportPrefix = options.getOrDefault("report", "benchmark");
+		double threshold = Double.parseDouble(options.getOrDefault("threshold", "10"));
+		report.write(new File(reportPrefix + ".json"), new File(reportPrefix + ".csv"));
+		System.out.print(report.toCsv());
+
+		if (!options.containsKey("baseline")) {
+			return 0;
+		}
+		List<String> regressions = report.regressionsAgainst(BenchmarkReport.read(new File(options.get("baseline"))), threshold);
+		for (String regression : regressions) {
+			System.err.println("REGRESSION " + regression);
+		}
+		return regressions.isEmpty() ? 0 : 2;
+	}
+
+	static SteppedScenario createScenario(String name, BackendSession session) throws BackendException {
+		switch (name) {
+			case "first":
+				return new FirstScenario(session);
+			case "second":
+				return new SecondScenario(session);
+			case "third": {
+				ScenarioUser author = ScenarioUser.random();
+				author.register(session);
+				UUID postId = UUID.randomUUID();
+				Timestamp createdAt = createTargetPost(session, author, postId);
+				return new ThirdScenario(session, postId, createdAt, author.getUserId());
+			}
+			case "fourth": {
+				ScenarioUser author = ScenarioUser.random();
+				author.register(session);
+				UUID postId = UUID.randomUUID();
+				createTargetPost(session, author, postId);
+				return new FourthScenario(session, postId);
+			}
+			case "fifth":
+				return new FifthScenario(session);
+			default:
+				throw new IllegalArgumentException("Unknown scenario " + name);
+		}
+	}
+
+	private static Timestamp createTargetPost(BackendSession session, ScenarioUser author, UUID postId) throws BackendException {
+		Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+		String postContent = UUID.randomUUID().toString().replace("-", "");
+		session.createNewPost(postId, author.getUserId(), postContent, timestamp, author.getName(), "counterTestCategory");
+		return timestamp;
+	}
+
+	static Map<String, String> parseArguments(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+		return options;
+	}
+
+	static Properties loadProperties(String file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = file != null
+				? new FileInputStream(file)
+				: BenchmarkRunner.class.getClassLoader().getResourceAsStream(PROPERTIES_FILENAME)) {
+			properties.load(in);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,175 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
+import cassdemo.metrics.CostAccumulator;
+import cassdemo.metrics.LatencyHistogram;
+import cassdemo.monitoring.MetricsPublisher;
+import cassdemo.trace.TraceOp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * Load generating process driven by a BenchmarkCoordinator. Listens on --port (0 picks a
+ * free one), prints "LISTENING <port>" once it does, serves a single run and exits.
+ *
+ * Protocol, DataOutputStream encoding, one message type byte first:
+ *   coordinator -> worker  CONFIGURE scenario, threads, users, warmup s, duration s, rate,
+ *                                    interval ms, properties
+ *                          START     wall clock millis to start at
+ *   worker -> coordinator  READY     session is up, the users exist and the warmup is done
+ *                          INTERVAL  cumulative counters, step histogram of the last interval
+ *                          RESULT    elapsed nanos, per-operation histograms, step and
+ *                                    per-operation costs (count, bytes, cpu nanos)
+ *                          FAILED    message
+ * The last INTERVAL is sent after the run ends, so the intervals add up to the whole run.
+ */
+public class BenchmarkWorker {
+
+	static final byte CONFIGURE = 1;
+	static final byte START = 2;
+	static final byte READY = 10;
+	static final byte INTERVAL = 11;
+	static final byte RESULT = 12;
+	static final byte FAILED = 13;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = BenchmarkRunner.parseArguments(args);
+		try (ServerSocket server = new ServerSocket(Integer.parseInt(options.getOrDefault("port", "0")))) {
+			System.out.println("LISTENING " + server.getLocalPort());
+			System.out.flush();
+			try (Socket socket = server.accept()) {
+				socket.setTcpNoDelay(true);
+				serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+						new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+			}
+		}
+		EventSink.get().close();
+		System.exit(0);
+	}
+
+	private static void serve(DataInputStream in, DataOutputStream out) throws IOException, InterruptedException {
+		expect(in, CONFIGURE);
+		String scenario = in.readUTF();
+		int threads = in.readInt();
+		int users = in.readInt();
+		long warmup = in.readLong();
+		long duration = in.readLong();
+		double rate = in.readDouble();
+		long intervalMillis = in.readLong();
+		Properties properties = new Properties();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			properties.setProperty(in.readUTF(), in.readUTF());
+		}
+
+		BenchmarkRunner runner;
+		try {
+			EventSink.install(EventSink.fromProperties(properties));
+			BackendSession session = new BackendSession(properties.getProperty("contact_point"), properties.getProperty("keyspace"), properties);
+			MetricsPublisher.start(session, properties);
+			runner = new BenchmarkRunner(session, BenchmarkRunner.createScenario(scenario, session), threads, users, duration, rate);
+			runner.prepare();
+			runner.warmup(warmup);
+		} catch (Exception e) {
+			out.writeByte(FAILED);
+			out.writeUTF(String.valueOf(e.getMessage()));
+			out.flush();
+			return;
+		}
+		out.writeByte(READY);
+		out.flush();
+
+		expect(in, START);
+		long startAt = in.readLong();
+		long start = System.nanoTime() + (startAt - System.currentTimeMillis()) * 1_000_000L;
+
+		Thread reporter = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					Thread.sleep(intervalMillis);
+					sendInterval(out, runner);
+				}
+			} catch (InterruptedException | IOException e) {
+				// run is over or the coordinator went away
+			}
+		}, "benchmark-reporter");
+		reporter.setDaemon(true);
+		reporter.start();
+
+		long elapsed = runner.run(start);
+		reporter.interrupt();
+		reporter.join();
+
+		sendInterval(out, runner);
+		synchronized (out) {
+			out.writeByte(RESULT);
+			out.writeLong(elapsed);
+			OperationStats operations = runner.getOperations();
+			out.writeInt(TraceOp.values().length);
+			for (TraceOp op : TraceOp.values()) {
+				out.writeUTF(op.name());
+				writeHistogram(out, operations.get(op));
+			}
+			writeCost(out, runner.getStepCosts());
+			Map<TraceOp, CostAccumulator> costs = runner.getOperationCosts();
+			out.writeInt(costs == null ? 0 : costs.size());
+			if (costs != null) {
+				for (Map.Entry<TraceOp, CostAccumulator> cost : costs.entrySet()) {
+					out.writeUTF(cost.getKey().name());
+					writeCost(out, cost.getValue());
+				}
+			}
+			out.flush();
+		}
+	}
+
+	private static void sendInterval(DataOutputStream out, BenchmarkRunner runner) throws IOException {
+		synchronized (out) {
+			out.writeByte(INTERVAL);
+			out.writeLong(runner.getErrors());
+			out.writeLong(runner.getTimeouts());
+			out.writeLong(runner.getAnomalies());
+			out.writeLong(runner.getOperations().getCount());
+			writeHistogram(out, runner.takeIntervalSteps());
+			out.flush();
+		}
+	}
+
+	private static void writeCost(DataOutputStream out, CostAccumulator cost) throws IOException {
+		out.writeLong(cost.getCount());
+		out.writeLong(cost.getAllocatedBytes());
+		out.writeLong(cost.getCpuNanos());
+	}
+
+	static void readCost(DataInputStream in, CostAccumulator cost) throws IOException {
+		cost.merge(in.readLong(), in.readLong(), in.readLong());
+	}
+
+	static void writeHistogram(DataOutputStream out, LatencyHistogram histogram) throws IOException {
+		byte[] bytes = histogram.toBytes();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static LatencyHistogram readHistogram(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return LatencyHistogram.fromBytes(bytes);
+	}
+
+	private static void expect(DataInputStream in, byte type) throws IOException {
+		byte actual = in.readByte();
+		if (actual != type) {
+			throw new IOException("Expected message " + type + ", got " + actual);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package cassdemo.benchmark;
+
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.service.CassandraDaemon;
+import org.apache.cassandra.service.StorageService;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Single Cassandra node running inside this JVM, with its data under `directory` and CQL on
+ * 127.0.0.1:9042 (the port BackendSession connects to). Cassandra keeps static state, so a
+ * JVM can start at most one node and it can't be restarted; stop() only shuts the native
+ * transport down. The table metrics it registers land in the platform MBean server, which
+ * is where the per-table numbers are read from.
+ */
+class EmbeddedCassandra {
+
+	private static final String METRIC = "org.apache.cassandra.metrics:type=Table,keyspace=%s,scope=%s,name=%s";
+
+	private final CassandraDaemon daemon = new CassandraDaemon(true);
+	private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+
+	/* rowCacheMegabytes is the node-wide row cache; only tables with caching rows enabled use it. */
+	EmbeddedCassandra(File directory, int rowCacheMegabytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		File config = new File(directory, "cassandra.yaml");
+		Files.write(config.toPath(), configuration(directory.getAbsoluteFile(), rowCacheMegabytes).getBytes(StandardCharsets.UTF_8));
+		System.setProperty("cassandra.config", config.getAbsoluteFile().toURI().toString());
+		System.setProperty("cassandra.storagedir", directory.getAbsolutePath());
+		// otherwise the daemon closes System.out and System.err once it is up
+		System.setProperty("cassandra-foreground", "true");
+	}
+
+	private static String configuration(File directory, int rowCacheMegabytes) {
+		return "cluster_name: cassdemo-embedded\n"
+				+ "num_tokens: 16\n"
+				+ "partitioner: org.apache.cassandra.dht.Murmur3Partitioner\n"
+				+ "endpoint_snitch: SimpleSnitch\n"
+				+ "listen_address: 127.0.0.1\n"
+				+ "rpc_address: 127.0.0.1\n"
+				+ "storage_port: 7010\n"
+				+ "ssl_storage_port: 7011\n"
+				+ "start_rpc: false\n"
+				+ "start_native_transport: true\n"
+				+ "native_transport_port: 9042\n"
+				+ "seed_provider:\n"
+				+ "  - class_name: org.apache.cassandra.locator.SimpleSeedProvider\n"
+				+ "    parameters:\n"
+				+ "      - seeds: \"127.0.0.1\"\n"
+				+ "commitlog_sync: periodic\n"
+				+ "commitlog_sync_period_in_ms: 10000\n"
+				+ "row_cache_size_in_mb: " + rowCacheMegabytes + "\n"
+				+ "data_file_directories:\n"
+				+ "  - " + new File(directory, "data") + "\n"
+				+ "commitlog_directory: " + new File(directory, "commitlog") + "\n"
+				+ "saved_caches_directory: " + new File(directory, "saved_caches") + "\n"
+				+ "hints_directory: " + new File(directory, "hints") + "\n"
+				+ "cdc_raw_directory: " + new File(directory, "cdc_raw") + "\n";
+	}
+
+	/* Starts the node; runs setup, so this takes a few seconds. */
+	void start() {
+		daemon.activate();
+	}
+
+	void stop() {
+		daemon.stopNativeTransport();
+	}
+
+	/* Writes the memtables of every table in keyspace to sstables. */
+	void flush(String keyspace) throws IOException {
+		StorageService.instance.forceKeyspaceFlush(keyspace);
+	}
+
+	/* Waits until no compaction is running or pending, so every profile is read in its steady layout. */
+	boolean awaitCompactions(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (CompactionManager.instance.getPendingTasks() > 0 || CompactionManager.instance.getActiveCompactions() > 0) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(100);
+		}
+		return true;
+	}
+
+	/* An attribute of a table metric, e.g. ("SSTablesPerReadHistogram", "Mean"); NaN when the table has none. */
+	double tableMetric(String keyspace, String table, String metric, String attribute) {
+		try {
+			Object value = mbeans.getAttribute(new ObjectName(String.format(METRIC, keyspace, table, metric)), attribute);
+			return ((Number) value).doubleValue();
+		} catch (JMException | ClassCastException e) {
+			return Double.NaN;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.OperationListener;
+import cassdemo.metrics.LatencyHistogram;
+import cassdemo.trace.TraceOp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+ * Latency histogram per backend operation, fed by BackendSession as an OperationListener.
+ * Only successful operations are seen here; failures are counted by whoever drives the
+ * scenario.
+ */
+public class OperationStats implements OperationListener {
+
+	private final Map<TraceOp, LatencyHistogram> latencies = new EnumMap<>(TraceOp.class);
+
+	public OperationStats() {
+		for (TraceOp op : TraceOp.values()) {
+			latencies.put(op, new LatencyHistogram());
+		}
+	}
+
+	@Override
+	public void operationCompleted(TraceOp op, long startNanos, long endNanos, int payloadSize,
+			UUID key1, UUID key2, UUID key3, long timestamp, String name) {
+		latencies.get(op).recordNanos(endNanos - startNanos);
+	}
+
+	public LatencyHistogram get(TraceOp op) {
+		return latencies.get(op);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (LatencyHistogram histogram : latencies.values()) {
+			count += histogram.getCount();
+		}
+		return count;
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : latencies.values()) {
+			histogram.reset();
+		}
+	}
+}
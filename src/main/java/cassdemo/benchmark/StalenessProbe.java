@@ -0,0 +1,128 @@
+package cassdemo.benchmark;
+
+import cassdemo.metrics.LatencyHistogram;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ * Measures how long a write takes to become readable. After the write is acknowledged the
+ * row is read right away; while it isn't there the read is repeated every pollInterval on
+ * the scheduler until it shows up or timeout passes. The visibility delay is the time from
+ * the acknowledgement to the start of the first read that saw the row, so it is 0 for rows
+ * visible at once and accurate to one poll interval otherwise.
+ *
+ * A write whose first read missed it is what the scenarios report as an ANOMALY.
+ */
+public class StalenessProbe {
+
+	private final ScheduledExecutorService scheduler;
+	private final long pollIntervalMicros;
+	private final long timeoutNanos;
+
+	private final LatencyHistogram visibilityDelay = new LatencyHistogram();
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+	private final AtomicLong probes = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+	private final AtomicLong neverVisible = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	public StalenessProbe(ScheduledExecutorService scheduler, long pollIntervalMicros, long timeoutMillis) {
+		this.scheduler = scheduler;
+		this.pollIntervalMicros = pollIntervalMicros;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	/*
+	 * Starts probing a write acknowledged at ackNanos (System.nanoTime()). read issues one
+	 * asynchronous existence check; the call returns without waiting for it.
+	 */
+	public void probe(long ackNanos, Supplier<ListenableFuture<Boolean>> read) {
+		probes.incrementAndGet();
+		pending.incrementAndGet();
+		attempt(ackNanos, read, true);
+	}
+
+	private void attempt(long ackNanos, Supplier<ListenableFuture<Boolean>> read, boolean first) {
+		long issuedAt = System.nanoTime();
+		ListenableFuture<Boolean> future;
+		try {
+			future = read.get();
+		} catch (RuntimeException e) {
+			errors.incrementAndGet();
+			pending.decrementAndGet();
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<Boolean>() {
+			@Override
+			public void onSuccess(Boolean visible) {
+				long now = System.nanoTime();
+				readLatency.recordNanos(now - issuedAt);
+				if (visible) {
+					visibilityDelay.recordNanos(first ? 0 : issuedAt - ackNanos);
+					pending.decrementAndGet();
+					return;
+				}
+				if (first) {
+					stale.incrementAndGet();
+				}
+				if (now - ackNanos > timeoutNanos) {
+					neverVisible.incrementAndGet();
+					pending.decrementAndGet();
+					return;
+				}
+				scheduler.schedule(() -> attempt(ackNanos, read, false), pollIntervalMicros, TimeUnit.MICROSECONDS);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				errors.incrementAndGet();
+				pending.decrementAndGet();
+			}
+		});
+	}
+
+	/* Waits until every probe has resolved, or the timeout passed. */
+	public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (pending.get() > 0) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	public LatencyHistogram getVisibilityDelay() {
+		return visibilityDelay;
+	}
+
+	public LatencyHistogram getReadLatency() {
+		return readLatency;
+	}
+
+	public long getProbes() {
+		return probes.get();
+	}
+
+	/* Writes the first read didn't see. */
+	public long getStale() {
+		return stale.get();
+	}
+
+	public long getNeverVisible() {
+		return neverVisible.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+}
@@ -0,0 +1,185 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
+import cassdemo.metrics.LatencyHistogram;
+import cassdemo.scenarios.ScenarioUser;
+import com.datastax.driver.core.ConsistencyLevel;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Read-after-write staleness for every write/read consistency level combination. For each
+ * combination `threads` users write `writes` rows each, and a StalenessProbe measures how
+ * long every row takes to become visible through the table the consistency scenarios read:
+ *
+ *   post     createNewPost, then posts_by_author by primary key (FirstScenario)
+ *   comment  createNewComment, then comments_by_author by primary key (FourthScenario)
+ *
+ * Options: --levels ONE,QUORUM,ALL (used for both sides), --kinds post,comment,
+ * --threads N, --writes N, --poll-us N, --timeout-ms N, --config FILE, --report PREFIX.
+ * The report has, per kind and combination, the anomaly rate (first read missed the row),
+ * visibility delay percentiles, rows never seen within the timeout, and write / read
+ * latency percentiles as the price of the combination.
+ */
+public class StalenessSweep {
+
+	private final BackendSession session;
+	private final ScheduledExecutorService scheduler;
+	private final int threads;
+	private final int writes;
+	private final long pollMicros;
+	private final long timeoutMillis;
+
+	public StalenessSweep(BackendSession session, ScheduledExecutorService scheduler, int threads, int writes, long pollMicros, long timeoutMillis) {
+		this.session = session;
+		this.scheduler = scheduler;
+		this.threads = threads;
+		this.writes = writes;
+		this.pollMicros = pollMicros;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public void sweep(List<ConsistencyLevel> levels, List<String> kinds, BenchmarkReport report) throws BackendException, InterruptedException {
+		ScenarioUser author = ScenarioUser.random();
+		author.register(session);
+		UUID postId = UUID.randomUUID();
+		session.createNewPost(postId, author.getUserId(), "staleness target", new Timestamp(System.currentTimeMillis()), author.getName(), "stalenessCategory");
+
+		try {
+			for (String kind : kinds) {
+				for (ConsistencyLevel write : levels) {
+					for (ConsistencyLevel read : levels) {
+						session.setConsistencyLevels(read, write);
+						measure(kind, write, read, postId, report);
+					}
+				}
+			}
+		} finally {
+			session.setConsistencyLevels(null, null);
+		}
+	}
+
+	private void measure(String kind, ConsistencyLevel write, ConsistencyLevel read, UUID postId, BenchmarkReport report) throws BackendException, InterruptedException {
+		List<ScenarioUser> users = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			ScenarioUser user = ScenarioUser.random();
+			user.register(session);
+			users.add(user);
+		}
+
+		StalenessProbe probe = new StalenessProbe(scheduler, pollMicros, timeoutMillis);
+		LatencyHistogram writeLatency = new LatencyHistogram();
+		AtomicLong writeErrors = new AtomicLong();
+		List<Thread> writers = new ArrayList<>();
+		for (ScenarioUser user : users) {
+			Thread writer = new Thread(() -> {
+				for (int i = 0; i < writes; i++) {
+					Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+					UUID id = UUID.randomUUID();
+					long start = System.nanoTime();
+					try {
+						if (kind.equals("post")) {
+							session.createNewPost(id, user.getUserId(), "staleness " + i, createdAt, user.getName(), "stalenessCategory");
+						} else {
+							session.createNewComment(postId, user.getUserId(), user.getName(), createdAt, id, "staleness " + i);
+						}
+					} catch (BackendException | RuntimeException e) {
+						writeErrors.incrementAndGet();
+						continue;
+					}
+					long ack = System.nanoTime();
+					writeLatency.recordNanos(ack - start);
+					probe.probe(ack, kind.equals("post")
+							? () -> session.isPostVisibleByAuthorAsync(user.getUserId(), createdAt, id)
+							: () -> session.isCommentVisibleByAuthorAsync(user.getUserId(), createdAt, id));
+				}
+			}, "staleness-writer");
+			writers.add(writer);
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		if (!probe.awaitQuiescence(timeoutMillis * 2, TimeUnit.MILLISECONDS)) {
+			EventSink.get().warn("%s W=%s R=%s: probes still pending after the timeout", kind, write, read);
+		}
+
+		long probes = probe.getProbes();
+		LatencyHistogram delay = probe.getVisibilityDelay();
+		String prefix = kind + "." + write.name().toLowerCase() + "_" + read.name().toLowerCase();
+		report.put(prefix + ".writes", probes);
+		report.put(prefix + ".anomaly_rate", probes == 0 ? 0.0 : (double) probe.getStale() / probes);
+		report.put(prefix + ".never_visible", probe.getNeverVisible());
+		report.put(prefix + ".errors", writeErrors.get() + probe.getErrors());
+		report.put(prefix + ".stale_p50_us", delay.getPercentile(50));
+		report.put(prefix + ".stale_p99_us", delay.getPercentile(99));
+		report.put(prefix + ".stale_p999_us", delay.getPercentile(99.9));
+		report.put(prefix + ".stale_max_us", delay.getMax());
+		report.put(prefix + ".write_p50_us", writeLatency.getPercentile(50));
+		report.put(prefix + ".write_p99_us", writeLatency.getPercentile(99));
+		report.put(prefix + ".read_p50_us", probe.getReadLatency().getPercentile(50));
+		report.put(prefix + ".read_p99_us", probe.getReadLatency().getPercentile(99));
+
+		System.out.printf("%-8s W=%-6s R=%-6s anomalies=%5.2f%% stale p99=%dus max=%dus never=%d write p99=%dus read p99=%dus%n",
+				kind, write, read, probes == 0 ? 0.0 : 100.0 * probe.getStale() / probes, delay.getPercentile(99), delay.getMax(),
+				probe.getNeverVisible(), writeLatency.getPercentile(99), probe.getReadLatency().getPercentile(99));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options;
+		try {
+			options = BenchmarkRunner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Properties properties = BenchmarkRunner.loadProperties(options.get("config"));
+		List<ConsistencyLevel> levels = new ArrayList<>();
+		for (String level : options.getOrDefault("levels", "ONE,QUORUM,ALL").split(",")) {
+			levels.add(ConsistencyLevel.valueOf(level.trim().toUpperCase()));
+		}
+		List<String> kinds = new ArrayList<>();
+		for (String kind : options.getOrDefault("kinds", "post,comment").split(",")) {
+			if (!kind.trim().equals("post") && !kind.trim().equals("comment")) {
+				System.err.println("Unknown kind " + kind);
+				System.exit(1);
+			}
+			kinds.add(kind.trim());
+		}
+
+		EventSink.install(EventSink.fromProperties(properties));
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+		int status = 0;
+		try {
+			BackendSession session = new BackendSession(properties.getProperty("contact_point"), properties.getProperty("keyspace"), properties);
+			StalenessSweep sweep = new StalenessSweep(session, scheduler,
+					Integer.parseInt(options.getOrDefault("threads", "8")),
+					Integer.parseInt(options.getOrDefault("writes", "200")),
+					Long.parseLong(options.getOrDefault("poll-us", "500")),
+					Long.parseLong(options.getOrDefault("timeout-ms", "2000")));
+			BenchmarkReport report = new BenchmarkReport();
+			sweep.sweep(levels, kinds, report);
+			String prefix = options.getOrDefault("report", "staleness");
+			report.write(new File(prefix + ".json"), new File(prefix + ".csv"));
+		} catch (BackendException e) {
+			System.err.println(e.getMessage());
+			status = 1;
+		}
+		scheduler.shutdownNow();
+		EventSink.get().close();
+		System.exit(status);
+	}
+}
@@ -0,0 +1,285 @@
+package cassdemo.benchmark;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.SchemaScript;
+import cassdemo.events.EventSink;
+import cassdemo.scenarios.FifthScenario;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares table option profiles (compaction strategy, caching, compression) on an embedded
+ * single node. Every profile gets its own keyspace built from the schema script, with the
+ * profile's options applied through ALTER TABLE; the same seeded dataset is then loaded in
+ * `load-rounds` rounds, one hour of createdAt per round and a flush after each, so the
+ * tables reach the measured run with several sstables like a long running node would.
+ * Seeded rows are written USING TIMESTAMP of their createdAt: TimeWindowCompactionStrategy
+ * buckets sstables by write timestamp, so this is what spreads the rounds over separate
+ * windows instead of the few seconds the load actually takes.
+ * After compactions settle FifthScenario runs against it, as in BenchmarkRunner.
+ *
+ * Profiles come from a properties file: `profiles` lists them in order and
+ * `<profile>.<table>` holds the options for that table, as written after WITH.
+ *
+ * Options: --profiles FILE (schema/table_profiles.properties), --schema FILE
+ * (schema/schema.cql), --data-dir DIR (embedded-cassandra), --row-cache-mb N, --authors N,
+ * --posts N, --comments N (per post), --load-rounds N, --threads N, --users N,
+ * --warmup SECONDS, --duration SECONDS, --rate STEPS_PER_SECOND, --config FILE,
+ * --report PREFIX.
+ * The report has, per profile, throughput, step and operation latency and, per table, the
+ * sstables touched per read and the live sstable count.
+ */
+public class TableProfileBenchmark {
+
+	private static final String[] TABLES = {
+			"posts_by_author", "posts_by_category", "posts_by_id", "comments_by_post", "comments_by_author"
+	};
+	private static final int CATEGORIES = 3;
+	private static final long ROUND_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final long COMPACTION_TIMEOUT_MINUTES = 10;
+
+	private final EmbeddedCassandra node;
+	private final List<String> schema;
+	private final Properties profiles;
+	private final Properties properties;
+	private final Map<String, String> options;
+
+	public TableProfileBenchmark(EmbeddedCassandra node, List<String> schema, Properties profiles, Properties properties, Map<String, String> options) {
+		this.node = node;
+		this.schema = schema;
+		this.profiles = profiles;
+		this.properties = properties;
+		this.options = options;
+	}
+
+	public void run(BenchmarkReport report) throws BackendException, IOException, InterruptedException {
+		for (String profile : profiles.getProperty("profiles", "default").split(",")) {
+			profile = profile.trim();
+			String keyspace = "profile_" + profile.toLowerCase().replaceAll("\\W", "_");
+			createKeyspace(keyspace, profile);
+
+			BackendSession session = new BackendSession("127.0.0.1", keyspace, properties);
+			try {
+				load(session, keyspace);
+				if (!node.awaitCompactions(COMPACTION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+					EventSink.get().warn("%s: compactions still running, measuring anyway", profile);
+				}
+				measure(profile, keyspace, session, report);
+			} finally {
+				session.close();
+			}
+		}
+	}
+
+	private void createKeyspace(String keyspace, String profile) {
+		try (Cluster cluster = Cluster.builder().addContactPoint("127.0.0.1").build();
+				Session session = cluster.connect()) {
+			session.execute("DROP KEYSPACE IF EXISTS " + keyspace);
+			// one node, so one replica; the scenarios' QUORUM then means this node
+			session.execute("CREATE KEYSPACE " + keyspace + " WITH REPLICATION = { 'class' : 'SimpleStrategy', 'replication_factor' : 1 }");
+			session.execute("USE " + keyspace);
+			for (String statement : schema) {
+				session.execute(statement);
+			}
+			for (String table : TABLES) {
+				String tableOptions = profiles.getProperty(profile + "." + table, "").trim();
+				if (!tableOptions.isEmpty()) {
+					session.execute("ALTER TABLE " + table + " WITH " + tableOptions);
+				}
+			}
+		}
+	}
+
+	/* The same dataset for every profile: the random source is seeded. */
+	private void load(BackendSession session, String keyspace) throws BackendException, IOException {
+		int authors = Integer.parseInt(options.getOrDefault("authors", "100"));
+		int posts = Integer.parseInt(options.getOrDefault("posts", "3000"));
+		int comments = Integer.parseInt(options.getOrDefault("comments", "3"));
+		int rounds = Integer.parseInt(options.getOrDefault("load-rounds", "4"));
+		Random random = new Random(42);
+
+		UUID[] authorIds = new UUID[authors];
+		String[] authorNames = new String[authors];
+		for (int i = 0; i < authors; i++) {
+			authorIds[i] = new UUID(random.nextLong(), random.nextLong());
+			authorNames[i] = "author" + i;
+			session.createNewUser(authorIds[i], authorNames[i], "password" + i, authorNames[i] + "@example.com", 20 + i % 50);
+		}
+
+		long start = System.currentTimeMillis() - rounds * ROUND_MILLIS;
+		try (Cluster cluster = Cluster.builder().addContactPoint("127.0.0.1").build();
+				Session seedSession = cluster.connect(keyspace)) {
+			SeedWriter writer = new SeedWriter(seedSession);
+			for (int index = 1; index <= CATEGORIES; index++) {
+				writer.category(category(index), start);
+			}
+			for (int round = 0; round < rounds; round++) {
+				for (int i = 0; i < posts / rounds; i++) {
+					long createdAt = start + round * ROUND_MILLIS + (long) (random.nextDouble() * ROUND_MILLIS);
+					int author = random.nextInt(authors);
+					UUID postId = new UUID(random.nextLong(), random.nextLong());
+					String category = category(1 + random.nextInt(CATEGORIES));
+					writer.post(postId, authorIds[author], authorNames[author], category, content(random, 64), createdAt);
+					for (int c = 0; c < comments; c++) {
+						int commenter = random.nextInt(authors);
+						writer.comment(postId, authorIds[commenter], authorNames[commenter], createdAt + c + 1,
+								new UUID(random.nextLong(), random.nextLong()), content(random, 32));
+					}
+				}
+				node.flush(keyspace);
+			}
+		} catch (RuntimeException e) {
+			throw new BackendException("Could not load the seed data. " + e.getMessage() + ".", e);
+		}
+	}
+
+	/* The category names FifthScenario reads and writes. */
+	private static String category(int index) {
+		return "category" + (double) index;
+	}
+
+	private static String content(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append((char) ('a' + random.nextInt(26)));
+		}
+		return builder.toString();
+	}
+
+	private void measure(String profile, String keyspace, BackendSession session, BenchmarkReport report) throws InterruptedException {
+		int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+		long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+		int users = Integer.parseInt(options.getOrDefault("users", String.valueOf(threads)));
+		BenchmarkRunner runner = new BenchmarkRunner(session, new FifthScenario(session), threads, users, duration, rate);
+		runner.prepare();
+		runner.warmup(Long.parseLong(options.getOrDefault("warmup", "30")));
+		BenchmarkReport run = runner.report(runner.run(System.nanoTime()));
+
+		String prefix = "profile." + profile + ".";
+		for (Map.Entry<String, Object> entry : run.getValues().entrySet()) {
+			String key = entry.getKey();
+			if (key.startsWith("throughput") || key.startsWith("step_latency") || key.startsWith("op.")
+					|| key.equals("error_rate") || key.equals("timeouts")) {
+				report.put(prefix + key, entry.getValue());
+			}
+		}
+		StringBuilder sstables = new StringBuilder();
+		for (String table : TABLES) {
+			double mean = node.tableMetric(keyspace, table, "SSTablesPerReadHistogram", "Mean");
+			double p99 = node.tableMetric(keyspace, table, "SSTablesPerReadHistogram", "99thPercentile");
+			double live = node.tableMetric(keyspace, table, "LiveSSTableCount", "Value");
+			putMetric(report, prefix + table + ".sstables_per_read_mean", mean);
+			putMetric(report, prefix + table + ".sstables_per_read_p99", p99);
+			putMetric(report, prefix + table + ".live_sstables", live);
+			sstables.append(String.format(" %s=%.2f", table, mean));
+		}
+
+		System.out.printf("%-16s %8.1f steps/s p50=%dus p99=%dus sstables/read:%s%n", profile,
+				run.get("throughput_steps_per_s"), run.get("step_latency_p50_us"), run.get("step_latency_p99_us"), sstables);
+	}
+
+	/*
+	 * Writes seed rows into the same tables and columns as BackendSession, but with the write
+	 * timestamp set to the row's createdAt.
+	 */
+	private static class SeedWriter {
+		private final Session session;
+		private final PreparedStatement category;
+		private final PreparedStatement postByAuthor;
+		private final PreparedStatement postByCategory;
+		private final PreparedStatement postById;
+		private final PreparedStatement commentByPost;
+		private final PreparedStatement commentByAuthor;
+
+		SeedWriter(Session session) {
+			this.session = session;
+			category = session.prepare("INSERT INTO categories (bucket, categoryName) VALUES (0, ?) USING TIMESTAMP ?");
+			postByAuthor = session.prepare("INSERT INTO posts_by_author (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+			postByCategory = session.prepare("INSERT INTO posts_by_category (categoryName, postId, postContent, createdAt, authorId, authorName) VALUES (?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+			postById = session.prepare("INSERT INTO posts_by_id (postId, postContent, createdAt, authorId, authorName, categoryName) VALUES (?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+			commentByPost = session.prepare("INSERT INTO comments_by_post (postId, authorId, authorName, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+			commentByAuthor = session.prepare("INSERT INTO comments_by_author (postId, authorId, createdAt, commentId, commentContent) VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?");
+		}
+
+		void category(String name, long createdAt) {
+			session.execute(category.bind(name, micros(createdAt)));
+		}
+
+		void post(UUID postId, UUID authorId, String authorName, String category, String content, long createdAt) {
+			Date date = new Date(createdAt);
+			session.execute(postByAuthor.bind(postId, content, date, authorId, authorName, category, micros(createdAt)));
+			session.execute(postByCategory.bind(category, postId, content, date, authorId, authorName, micros(createdAt)));
+			session.execute(postById.bind(postId, content, date, authorId, authorName, category, micros(createdAt)));
+		}
+
+		void comment(UUID postId, UUID authorId, String authorName, long createdAt, UUID commentId, String content) {
+			Date date = new Date(createdAt);
+			session.execute(commentByPost.bind(postId, authorId, authorName, date, commentId, content, micros(createdAt)));
+			session.execute(commentByAuthor.bind(postId, authorId, date, commentId, content, micros(createdAt)));
+		}
+
+		private static long micros(long millis) {
+			return millis * 1000;
+		}
+	}
+
+	private static void putMetric(BenchmarkReport report, String key, double value) {
+		if (!Double.isNaN(value)) {
+			report.put(key, value);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options;
+		try {
+			options = BenchmarkRunner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Properties properties = BenchmarkRunner.loadProperties(options.get("config"));
+		// every profile has its own keyspace already
+		properties.setProperty("run_isolation", "false");
+		Properties profiles = new Properties();
+		try (InputStream in = new FileInputStream(options.getOrDefault("profiles", "schema/table_profiles.properties"))) {
+			profiles.load(in);
+		}
+		List<String> schema = SchemaScript.read(new File(options.getOrDefault("schema", "schema/schema.cql"))).getStatements();
+
+		EventSink.install(EventSink.fromProperties(properties));
+		int status = 0;
+		EmbeddedCassandra node = new EmbeddedCassandra(new File(options.getOrDefault("data-dir", "embedded-cassandra")),
+				Integer.parseInt(options.getOrDefault("row-cache-mb", "64")));
+		try {
+			node.start();
+			BenchmarkReport report = new BenchmarkReport();
+			new TableProfileBenchmark(node, schema, profiles, properties, options).run(report);
+			String prefix = options.getOrDefault("report", "profiles");
+			report.write(new File(prefix + ".json"), new File(prefix + ".csv"));
+		} catch (BackendException | RuntimeException e) {
+			System.err.println(e.getMessage());
+			status = 1;
+		} finally {
+			node.stop();
+		}
+		EventSink.get().close();
+		// the embedded node's threads don't stop on their own
+		System.exit(status);
+	}
+}
@@ -0,0 +1,242 @@
+package cassdemo.events;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Structured event log for the load generator. Producers claim a slot in a bounded
+ * lock-free ring (Vyukov MPMC sequence scheme), fill it in and publish it; formatting and
+ * file I/O happen on a single background writer thread. A full ring drops the event and
+ * counts it rather than blocking a scenario thread. DEBUG and INFO events can be sampled,
+ * WARN and ERROR are always kept.
+ *
+ * Until install() is called every event is discarded.
+ */
+public class EventSink implements AutoCloseable {
+
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR
+	}
+
+	private static volatile EventSink instance = new EventSink();
+
+	public static EventSink get() {
+		return instance;
+	}
+
+	/* Replaces the global sink, closing the previous one. */
+	public static synchronized void install(EventSink sink) {
+		EventSink previous = instance;
+		instance = sink;
+		previous.close();
+	}
+
+	private final Level minLevel;
+	private final double sampleRate;
+	private final int mask;
+
+	private final AtomicLongArray sequences;
+	private final long[] times;
+	private final Level[] levels;
+	private final String[] formats;
+	private final Object[][] arguments;
+
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong sampledOut = new AtomicLong();
+
+	private final Writer out;
+	private final Thread writer;
+	private volatile boolean running;
+
+	private EventSink() {
+		this.minLevel = Level.ERROR;
+		this.sampleRate = 0;
+		this.mask = 0;
+		this.sequences = null;
+		this.times = null;
+		this.levels = null;
+		this.formats = null;
+		this.arguments = null;
+		this.out = null;
+		this.writer = null;
+	}
+
+	/* Builds a sink from the events_* entries of config.properties. */
+	public static EventSink fromProperties(Properties properties) throws IOException {
+		return new EventSink(
+				new File(properties.getProperty("events_file", "events.log")),
+				Level.valueOf(properties.getProperty("events_level", "INFO")),
+				Double.parseDouble(properties.getProperty("events_sample_rate", "1.0")),
+				Integer.parseInt(properties.getProperty("events_capacity", "65536")));
+	}
+
+	/*
+	 * capacity is rounded up to a power of two.
+	 */
+	public EventSink(File file, Level minLevel, double sampleRate, int capacity) throws IOException {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.minLevel = minLevel;
+		this.sampleRate = sampleRate;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.times = new long[size];
+		this.levels = new Level[size];
+		this.formats = new String[size];
+		this.arguments = new Object[size][];
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+		this.running = true;
+		this.writer = new Thread(this::drain, "event-sink");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public boolean isEnabled(Level level) {
+		return sequences != null && level.compareTo(minLevel) >= 0;
+	}
+
+	public void debug(String format, Object... args) {
+		publish(Level.DEBUG, format, args);
+	}
+
+	public void info(String format, Object... args) {
+		publish(Level.INFO, format, args);
+	}
+
+	public void warn(String format, Object... args) {
+		publish(Level.WARN, format, args);
+	}
+
+	public void error(String format, Object... args) {
+		publish(Level.ERROR, format, args);
+	}
+
+	/*
+	 * format uses String.format syntax but is only applied on the writer thread, so
+	 * arguments must not be mutated after the call.
+	 */
+	public void publish(Level level, String format, Object... args) {
+		if (!isEnabled(level)) {
+			return;
+		}
+		if (level.compareTo(Level.WARN) < 0 && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			sampledOut.incrementAndGet();
+			return;
+		}
+
+		long sequence;
+		int slot;
+		while (true) {
+			sequence = tail.get();
+			slot = (int) sequence & mask;
+			long available = sequences.get(slot);
+			if (available < sequence) {
+				dropped.incrementAndGet();
+				return;
+			}
+			if (available == sequence && tail.compareAndSet(sequence, sequence + 1)) {
+				break;
+			}
+		}
+		times[slot] = System.currentTimeMillis();
+		levels[slot] = level;
+		formats[slot] = format;
+		arguments[slot] = args;
+		sequences.set(slot, sequence + 1);
+	}
+
+	private void drain() {
+		int idle = 0;
+		while (running || sequences.get((int) head & mask) == head + 1) {
+			int slot = (int) head & mask;
+			if (sequences.get(slot) != head + 1) {
+				flushQuietly();
+				LockSupport.parkNanos(idle < 10 ? 100_000 : 1_000_000);
+				idle++;
+				continue;
+			}
+			idle = 0;
+			long time = times[slot];
+			Level level = levels[slot];
+			String format = formats[slot];
+			Object[] args = arguments[slot];
+			arguments[slot] = null;
+			sequences.set(slot, head + mask + 1);
+			head++;
+			write(time, level, format, args);
+		}
+		flushQuietly();
+	}
+
+	private void write(long time, Level level, String format, Object[] args) {
+		try {
+			out.write(Long.toString(time));
+			out.write(' ');
+			out.write(level.name());
+			out.write(' ');
+			out.write(args == null || args.length == 0 ? format : String.format(format, args));
+			out.write('\n');
+			written.incrementAndGet();
+		} catch (IOException | RuntimeException e) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			// nothing sensible to do, the events are lost
+		}
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getSampledOut() {
+		return sampledOut.get();
+	}
+
+	/* Writes out what is queued, then stops the writer thread. */
+	@Override
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+		running = false;
+		try {
+			writer.join();
+			out.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			// already flushed as far as possible
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("events: written=%d dropped=%d sampledOut=%d", getWritten(), getDropped(), getSampledOut());
+	}
+}
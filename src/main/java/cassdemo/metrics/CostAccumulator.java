@@ -0,0 +1,56 @@
+package cassdemo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/* Running totals of allocated bytes and CPU time over a number of operations. */
+public class CostAccumulator {
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final LongAdder cpuNanos = new LongAdder();
+
+	public void add(long bytes, long nanos) {
+		count.increment();
+		allocatedBytes.add(bytes);
+		cpuNanos.add(nanos);
+	}
+
+	public void merge(long count, long bytes, long nanos) {
+		this.count.add(count);
+		allocatedBytes.add(bytes);
+		cpuNanos.add(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	public long getCpuNanos() {
+		return cpuNanos.sum();
+	}
+
+	public double getBytesPerOp() {
+		long operations = count.sum();
+		return operations == 0 ? 0 : (double) allocatedBytes.sum() / operations;
+	}
+
+	public double getCpuMicrosPerOp() {
+		long operations = count.sum();
+		return operations == 0 ? 0 : cpuNanos.sum() / 1000.0 / operations;
+	}
+
+	public void reset() {
+		count.reset();
+		allocatedBytes.reset();
+		cpuNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d bytes/op=%.0f cpu/op=%.1fus", getCount(), getBytesPerOp(), getCpuMicrosPerOp());
+	}
+}
@@ -0,0 +1,128 @@
+package cassdemo.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Streaming heavy-hitter detection in fixed memory: a Count-Min sketch (depth rows of width
+ * atomic counters) estimates every key's count, and a bounded candidate set keeps the keys
+ * whose estimate cleared the current floor, Space-Saving style. Estimates never undercount
+ * and overcount by at most about total * e / width with probability 1 - e^-depth.
+ *
+ * add() is depth atomic increments plus, for keys above the floor, one map put. The
+ * candidate set may grow to twice its capacity and is then cut back in one pass under a
+ * tryLock, so adding never blocks on another thread; while a cut is pending no new keys
+ * are admitted.
+ */
+public class HeavyHitters {
+
+	private static final long[] SEEDS = {
+			0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+			0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+	};
+
+	private final int depth;
+	private final int width;
+	private final int mask;
+	private final int capacity;
+	private final AtomicLongArray counts;
+	private final LongAdder total = new LongAdder();
+	private final Map<Object, Long> candidates = new ConcurrentHashMap<>();
+	private final ReentrantLock trimLock = new ReentrantLock();
+	private volatile long floor;
+
+	/*
+	 * width is rounded up to a power of two, depth is at most 8. capacity is the number of
+	 * candidate keys kept, a few times the top-k that will be asked for.
+	 */
+	public HeavyHitters(int depth, int width, int capacity) {
+		this.depth = Math.max(1, Math.min(depth, SEEDS.length));
+		this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+		this.mask = this.width - 1;
+		this.capacity = capacity;
+		this.counts = new AtomicLongArray(this.depth * this.width);
+	}
+
+	public void add(Object key) {
+		long hash = key.hashCode();
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counts.incrementAndGet(row * width + slot(hash, row)));
+		}
+		total.increment();
+		if (estimate <= floor) {
+			return;
+		}
+		if (candidates.size() < 2 * capacity) {
+			candidates.put(key, estimate);
+		} else {
+			candidates.replace(key, estimate);
+		}
+		if (candidates.size() >= 2 * capacity && trimLock.tryLock()) {
+			try {
+				trim();
+			} finally {
+				trimLock.unlock();
+			}
+		}
+	}
+
+	public long estimate(Object key) {
+		long hash = key.hashCode();
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counts.get(row * width + slot(hash, row)));
+		}
+		return estimate;
+	}
+
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/* The k keys with the highest estimated counts, highest first. */
+	public List<Map.Entry<Object, Long>> top(int k) {
+		List<Map.Entry<Object, Long>> entries = new ArrayList<>();
+		for (Object key : candidates.keySet()) {
+			entries.add(Map.entry(key, estimate(key)));
+		}
+		entries.sort(Map.Entry.<Object, Long>comparingByValue(Comparator.reverseOrder()));
+		return entries.size() > k ? entries.subList(0, k) : entries;
+	}
+
+	public void reset() {
+		trimLock.lock();
+		try {
+			for (int i = 0; i < counts.length(); i++) {
+				counts.set(i, 0);
+			}
+			candidates.clear();
+			total.reset();
+			floor = 0;
+		} finally {
+			trimLock.unlock();
+		}
+	}
+
+	/* Keeps the `capacity` largest candidates (ties may take a few more with them). */
+	private void trim() {
+		List<Long> values = new ArrayList<>(candidates.values());
+		if (values.size() <= capacity) {
+			return;
+		}
+		values.sort(Comparator.reverseOrder());
+		long cutoff = values.get(capacity);
+		candidates.values().removeIf(count -> count <= cutoff);
+		floor = Math.max(floor, cutoff);
+	}
+
+	private int slot(long hash, int row) {
+		return (int) ((hash * SEEDS[row]) >>> 32) & mask;
+	}
+}
@@ -0,0 +1,40 @@
+package cassdemo.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/*
+ * Allocated bytes and CPU time of the current thread, from the HotSpot ThreadMXBean
+ * extension. Both counters are cumulative per thread, so a cost is the difference of two
+ * readings on the same thread. Readings are -1 where the JVM doesn't support them.
+ */
+public class ThreadCosts {
+
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (threads.isThreadAllocatedMemorySupported()) {
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		if (threads.isCurrentThreadCpuTimeSupported()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		return threads;
+	}
+
+	public static boolean isSupported() {
+		return THREADS != null && THREADS.isThreadAllocatedMemoryEnabled() && THREADS.isThreadCpuTimeEnabled();
+	}
+
+	public static long allocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public static long cpuNanos() {
+		return THREADS == null ? -1 : THREADS.getCurrentThreadCpuTime();
+	}
+}
@@ -0,0 +1,63 @@
+package cassdemo.monitoring;
+
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.ConcurrencyLimiter;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Session;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+class BackendMetrics implements BackendMetricsMXBean {
+
+	private final BackendSession session;
+
+	BackendMetrics(BackendSession session) {
+		this.session = session;
+	}
+
+	@Override
+	public Map<String, Integer> getHostInFlightRequests() {
+		Session.State state = session.getSessionState();
+		Map<String, Integer> hosts = new TreeMap<>();
+		for (Host host : state.getConnectedHosts()) {
+			hosts.put(hostName(host), state.getInFlightQueries(host));
+		}
+		return hosts;
+	}
+
+	@Override
+	public Map<String, Integer> getHostOpenConnections() {
+		Session.State state = session.getSessionState();
+		Map<String, Integer> hosts = new TreeMap<>();
+		for (Host host : state.getConnectedHosts()) {
+			hosts.put(hostName(host), state.getOpenConnections(host));
+		}
+		return hosts;
+	}
+
+	@Override
+	public int getInFlightRequests() {
+		int total = 0;
+		for (int inFlight : getHostInFlightRequests().values()) {
+			total += inFlight;
+		}
+		return total;
+	}
+
+	@Override
+	public int getReadLimit() {
+		ConcurrencyLimiter limiter = session.getReadLimiter();
+		return limiter == null ? -1 : limiter.getLimit();
+	}
+
+	@Override
+	public int getWriteLimit() {
+		ConcurrencyLimiter limiter = session.getWriteLimiter();
+		return limiter == null ? -1 : limiter.getLimit();
+	}
+
+	static String hostName(Host host) {
+		return host.getSocketAddress().getAddress().getHostAddress() + ":" + host.getSocketAddress().getPort();
+	}
+}
@@ -0,0 +1,16 @@
+package cassdemo.monitoring;
+
+import java.util.Map;
+
+/* Session wide JMX view; per-statement metrics are separate StatementMetrics MBeans. */
+public interface BackendMetricsMXBean {
+	Map<String, Integer> getHostInFlightRequests();
+
+	Map<String, Integer> getHostOpenConnections();
+
+	int getInFlightRequests();
+
+	int getReadLimit();
+
+	int getWriteLimit();
+}
@@ -0,0 +1,112 @@
+package cassdemo.monitoring;
+
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.StatementMetrics;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * Publishes a BackendSession's metrics while it runs: MBeans under the "cassdemo" domain
+ * (one per prepared statement plus cassdemo:type=Backend; the driver registers its own
+ * under "cluster1-metrics") and a Prometheus /metrics endpoint on metrics_http_port,
+ * bound to localhost. The endpoint is off unless metrics_http_port is set to 0 or more (0
+ * picks a free port); a port that can't be bound is logged and the run goes on without it.
+ * metrics_jmx_enabled=false disables the MBeans.
+ */
+public class MetricsPublisher implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsPublisher.class);
+
+	private final List<ObjectName> registered = new ArrayList<>();
+	private HttpServer server;
+
+	public static MetricsPublisher start(BackendSession session, Properties properties) {
+		MetricsPublisher publisher = new MetricsPublisher();
+		if (Boolean.parseBoolean(properties.getProperty("metrics_jmx_enabled", "true"))) {
+			publisher.registerMBeans(session);
+		}
+		int port = Integer.parseInt(properties.getProperty("metrics_http_port", "-1"));
+		if (port >= 0) {
+			try {
+				publisher.startServer(session, port);
+			} catch (IOException e) {
+				logger.warn("Could not start the metrics endpoint on port " + port + ": " + e.getMessage());
+			}
+		}
+		return publisher;
+	}
+
+	private void registerMBeans(BackendSession session) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			register(server, new BackendMetrics(session), new ObjectName("cassdemo:type=Backend"));
+			for (StatementMetrics metrics : session.getStatementMetrics()) {
+				register(server, metrics, new ObjectName("cassdemo:type=Statement,name=" + ObjectName.quote(metrics.getQuery())));
+			}
+		} catch (JMException e) {
+			logger.warn("Could not register metrics MBeans: " + e.getMessage());
+		}
+	}
+
+	private void register(MBeanServer server, Object bean, ObjectName name) throws JMException {
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(bean, name);
+		registered.add(name);
+	}
+
+	private void startServer(BackendSession session, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/metrics", exchange -> {
+			try {
+				byte[] body = PrometheusFormat.render(session).getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Could not render metrics: " + e.getMessage());
+				exchange.sendResponseHeaders(500, -1);
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+		logger.info("Metrics endpoint on http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+	}
+
+	/* Port of the /metrics endpoint, -1 when it isn't running. */
+	public int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+		}
+		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered) {
+			try {
+				mbeans.unregisterMBean(name);
+			} catch (JMException e) {
+				// already gone
+			}
+		}
+	}
+}
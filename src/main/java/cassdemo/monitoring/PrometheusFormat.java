@@ -0,0 +1,148 @@
+package cassdemo.monitoring;
+
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.ConcurrencyLimiter;
+import cassdemo.backend.StatementMetrics;
+import cassdemo.metrics.LatencyHistogram;
+import com.codahale.metrics.Snapshot;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metrics;
+import com.datastax.driver.core.Session;
+
+import java.util.Locale;
+
+/*
+ * Renders the session's metrics in the Prometheus text exposition format (version 0.0.4):
+ * driver totals from Cluster.getMetrics(), one series per prepared statement labelled with
+ * its query, per-host connections and in-flight requests, and the concurrency limits.
+ */
+class PrometheusFormat {
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final StringBuilder out = new StringBuilder(16 * 1024);
+
+	static String render(BackendSession session) {
+		PrometheusFormat format = new PrometheusFormat();
+		format.driver(session.getDriverMetrics());
+		format.statements(session);
+		format.hosts(session.getSessionState());
+		format.limiters(session.getReadLimiter(), session.getWriteLimiter());
+		return format.out.toString();
+	}
+
+	private void driver(Metrics metrics) {
+		type("cassdemo_driver_known_hosts", "gauge");
+		sample("cassdemo_driver_known_hosts", "", metrics.getKnownHosts().getValue());
+		type("cassdemo_driver_connected_hosts", "gauge");
+		sample("cassdemo_driver_connected_hosts", "", metrics.getConnectedToHosts().getValue());
+		type("cassdemo_driver_open_connections", "gauge");
+		sample("cassdemo_driver_open_connections", "", metrics.getOpenConnections().getValue());
+		type("cassdemo_driver_trashed_connections", "gauge");
+		sample("cassdemo_driver_trashed_connections", "", metrics.getTrashedConnections().getValue());
+		type("cassdemo_driver_executor_queue_depth", "gauge");
+		sample("cassdemo_driver_executor_queue_depth", "", metrics.getExecutorQueueDepth().getValue());
+
+		Snapshot snapshot = metrics.getRequestsTimer().getSnapshot();
+		type("cassdemo_driver_request_latency_microseconds", "summary");
+		for (double quantile : QUANTILES) {
+			sample("cassdemo_driver_request_latency_microseconds", label("quantile", number(quantile)), snapshot.getValue(quantile) / 1000.0);
+		}
+		sample("cassdemo_driver_request_latency_microseconds_count", "", metrics.getRequestsTimer().getCount());
+
+		Metrics.Errors errors = metrics.getErrorMetrics();
+		type("cassdemo_driver_errors_total", "counter");
+		sample("cassdemo_driver_errors_total", label("kind", "connection"), errors.getConnectionErrors().getCount());
+		sample("cassdemo_driver_errors_total", label("kind", "read_timeout"), errors.getReadTimeouts().getCount());
+		sample("cassdemo_driver_errors_total", label("kind", "write_timeout"), errors.getWriteTimeouts().getCount());
+		sample("cassdemo_driver_errors_total", label("kind", "client_timeout"), errors.getClientTimeouts().getCount());
+		sample("cassdemo_driver_errors_total", label("kind", "unavailable"), errors.getUnavailables().getCount());
+		sample("cassdemo_driver_errors_total", label("kind", "other"), errors.getOthers().getCount());
+		type("cassdemo_driver_retries_total", "counter");
+		sample("cassdemo_driver_retries_total", "", errors.getRetries().getCount());
+		type("cassdemo_driver_speculative_executions_total", "counter");
+		sample("cassdemo_driver_speculative_executions_total", "", errors.getSpeculativeExecutions().getCount());
+	}
+
+	private void statements(BackendSession session) {
+		type("cassdemo_statement_requests_total", "counter");
+		for (StatementMetrics metrics : session.getStatementMetrics()) {
+			sample("cassdemo_statement_requests_total", label("statement", metrics.getQuery()), metrics.getRequests());
+		}
+		type("cassdemo_statement_errors_total", "counter");
+		for (StatementMetrics metrics : session.getStatementMetrics()) {
+			sample("cassdemo_statement_errors_total", label("statement", metrics.getQuery()), metrics.getErrors());
+		}
+		type("cassdemo_statement_timeouts_total", "counter");
+		for (StatementMetrics metrics : session.getStatementMetrics()) {
+			sample("cassdemo_statement_timeouts_total", label("statement", metrics.getQuery()), metrics.getTimeouts());
+		}
+		type("cassdemo_statement_latency_microseconds", "summary");
+		for (StatementMetrics metrics : session.getStatementMetrics()) {
+			LatencyHistogram latency = metrics.getLatency();
+			String statement = label("statement", metrics.getQuery());
+			for (double quantile : QUANTILES) {
+				sample("cassdemo_statement_latency_microseconds",
+						statement + "," + label("quantile", number(quantile)), latency.getPercentile(quantile * 100));
+			}
+			long count = latency.getCount();
+			sample("cassdemo_statement_latency_microseconds_sum", statement, latency.getMean() * count);
+			sample("cassdemo_statement_latency_microseconds_count", statement, count);
+		}
+	}
+
+	private void hosts(Session.State state) {
+		type("cassdemo_host_in_flight_requests", "gauge");
+		for (Host host : state.getConnectedHosts()) {
+			sample("cassdemo_host_in_flight_requests", label("host", BackendMetrics.hostName(host)), state.getInFlightQueries(host));
+		}
+		type("cassdemo_host_open_connections", "gauge");
+		for (Host host : state.getConnectedHosts()) {
+			sample("cassdemo_host_open_connections", label("host", BackendMetrics.hostName(host)), state.getOpenConnections(host));
+		}
+	}
+
+	private void limiters(ConcurrencyLimiter... limiters) {
+		if (limiters[0] == null) {
+			return;
+		}
+		type("cassdemo_limiter_limit", "gauge");
+		for (ConcurrencyLimiter limiter : limiters) {
+			sample("cassdemo_limiter_limit", label("limiter", limiter.getName()), limiter.getLimit());
+		}
+		type("cassdemo_limiter_in_flight", "gauge");
+		for (ConcurrencyLimiter limiter : limiters) {
+			sample("cassdemo_limiter_in_flight", label("limiter", limiter.getName()), limiter.getInFlight());
+		}
+		type("cassdemo_limiter_queued", "gauge");
+		for (ConcurrencyLimiter limiter : limiters) {
+			sample("cassdemo_limiter_queued", label("limiter", limiter.getName()), limiter.getQueued());
+		}
+		type("cassdemo_limiter_rejected_total", "counter");
+		for (ConcurrencyLimiter limiter : limiters) {
+			sample("cassdemo_limiter_rejected_total", label("limiter", limiter.getName()), limiter.getRejected());
+		}
+	}
+
+	private void type(String metric, String type) {
+		out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+	}
+
+	private void sample(String metric, String labels, double value) {
+		out.append(metric);
+		if (!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(number(value)).append('\n');
+	}
+
+	private static String label(String name, String value) {
+		return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+	}
+
+	private static String number(double value) {
+		return value == Math.rint(value) && !Double.isInfinite(value)
+				? Long.toString((long) value)
+				: String.format(Locale.ROOT, "%.3f", value);
+	}
+}
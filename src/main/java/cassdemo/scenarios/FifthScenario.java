@@ -2,6 +2,7 @@ package cassdemo.scenarios;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
 import com.datastax.driver.core.Row;
 
 import java.sql.Timestamp;
@@ -9,7 +10,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
-public class FifthScenario extends Thread {
+public class FifthScenario extends Thread implements SteppedScenario {
     BackendSession session;
 
     public FifthScenario(BackendSession session) {
@@ -18,55 +19,55 @@ public class FifthScenario extends Thread {
 
     @Override
     public void run() {
-        UUID userId = UUID.randomUUID();
-        String name = UUID.randomUUID().toString().replace("-", "");
-        String password = UUID.randomUUID().toString().replace("-", "");
-        String email = UUID.randomUUID().toString().replace("-", "");
-        int maxAge = 100;
-        int minAge = 18;
-        int age = (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge);
-        int lastPossibleDecision = 5;
-        int firstPossibleDecision = 0;
-        int decision;
+        ScenarioUser user = ScenarioUser.random();
         try {
-            session.createNewUser(userId, name, password, email, age);
+            user.register(session);
             while (true) {
-                decision = (int) Math.floor(Math.random() * (lastPossibleDecision - firstPossibleDecision + 1) + firstPossibleDecision);
-                switch (decision) {
-                    case 0:
-                        addPost(userId, name);
-                        break;
-                    case 1:
-                        removePost(userId);
-                        break;
-                    case 2:
-                        addComment(userId, name);
-                        break;
-                    case 3:
-                        removeComment(userId);
-                        break;
-                    case 4:
-                        addLike(userId);
-                        break;
-                    case 5:
-                        removeLike(userId);
-                        break;
-                    default:
-                        addPost(userId, name);
-                        break;
-                }
+                step(user);
                 Thread.sleep(100);
             }
         } catch (InterruptedException e) {
-            System.out.println("end of simulation for this thread");
+            EventSink.get().info("[%s] end of simulation for this thread", user.getUserId());
         } catch (BackendException e) {
-            System.out.println("session error");
-            e.printStackTrace();
+            EventSink.get().error("[%s] session error: %s", user.getUserId(), e.getMessage());
         }
     }
 
+    @Override
+    public boolean step(ScenarioUser user) throws BackendException {
+        UUID userId = user.getUserId();
+        String name = user.getName();
+        int lastPossibleDecision = 5;
+        int firstPossibleDecision = 0;
+        int decision = (int) Math.floor(Math.random() * (lastPossibleDecision - firstPossibleDecision + 1) + firstPossibleDecision);
+        switch (decision) {
+            case 0:
+                addPost(userId, name);
+                break;
+            case 1:
+                removePost(userId);
+                break;
+            case 2:
+                addComment(userId, name);
+                break;
+            case 3:
+                removeComment(userId);
+                break;
+            case 4:
+                addLike(userId);
+                break;
+            case 5:
+                removeLike(userId);
+                break;
+            default:
+                addPost(userId, name);
+                break;
+        }
+        return true;
+    }
+
     private void addPost(UUID userId, String userName) throws BackendException {
-        System.out.printf("[%s] is adding post %n", userId);
+        EventSink.get().debug("[%s] is adding post", userId);
         UUID postId = UUID.randomUUID();
         int maxCategory = 3;
         int minCategory = 1;
@@ -74,11 +75,11 @@ public class FifthScenario extends Thread {
         String postContent = UUID.randomUUID().toString().replace("-", "");
         Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         session.createNewPost(postId, userId, postContent, timestamp, userName, categoryName);
-        System.out.printf("[%s] created post with id=%s %n", userId, postId);
+        EventSink.get().info("[%s] created post with id=%s", userId, postId);
     }
 
     private void removePost(UUID userId) throws BackendException {
-        System.out.printf("> [%s] is removing post %n", userId);
+        EventSink.get().debug("> [%s] is removing post", userId);
         List<Row> userPosts = session.selectAllPostsByAuthor(userId);
         if (userPosts.size() > 0) {
             Random rand = new Random();
@@ -89,14 +90,14 @@ public class FifthScenario extends Thread {
                     new Timestamp(postToRemove.getTimestamp("createdAt").getTime()),
                     postToRemove.getString("categoryName")
             );
-            System.out.printf("< [%s] removed post %n", userId);
+            EventSink.get().info("< [%s] removed post", userId);
         } else {
-            System.out.printf("[%s] this user don't have any post to remove %n", userId);
+            EventSink.get().debug("[%s] this user don't have any post to remove", userId);
         }
     }
 
     private void addComment(UUID userId, String userName) throws BackendException {
-        System.out.printf("> [%s] is adding comment %n", userId);
+        EventSink.get().debug("> [%s] is adding comment", userId);
         int maxCategory = 3;
         int minCategory = 1;
         String categoryName = "category" + Math.floor(Math.random() * (maxCategory - minCategory + 1) + minCategory);
@@ -108,14 +109,14 @@ public class FifthScenario extends Thread {
             String commentContent = UUID.randomUUID().toString().replace("-", "");
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
             session.createNewComment(postToComment.getUUID("postId"), userId, userName, timestamp, commentId, commentContent);
-            System.out.printf("< [%s] added comment %n", userId);
+            EventSink.get().info("< [%s] added comment", userId);
         } else {
-            System.out.printf("[%s] this category don't have any posts %n", categoryName);
+            EventSink.get().debug("[%s] this category don't have any posts", categoryName);
         }
     }
 
     private void removeComment(UUID userId) throws BackendException {
-        System.out.printf("> [%s] is removing comment %n", userId);
+        EventSink.get().debug("> [%s] is removing comment", userId);
         List<Row> commentsByAuthor = session.selectCommentsByAuthor(userId);
         if (commentsByAuthor.size() > 0) {
             Random rand = new Random();
@@ -126,41 +127,44 @@ public class FifthScenario extends Thread {
                     postToComment.getUUID("commentId"),
                     postToComment.getUUID("authorId")
             );
-            System.out.printf("< [%s] removed comment %n", userId);
+            EventSink.get().info("< [%s] removed comment", userId);
         } else {
-            System.out.printf("[%s] this user hasn't commented anything %n", userId);
+            EventSink.get().debug("[%s] this user hasn't commented anything", userId);
         }
     }
 
     private void addLike(UUID userId) throws BackendException {
-        System.out.printf("> [%s] is adding a like %n", userId);
-        List<Row> posts = session.selectPosts();
+        EventSink.get().debug("> [%s] is adding a like", userId);
+        int maxCategory = 3;
+        int minCategory = 1;
+        String categoryName = "category" + Math.floor(Math.random() * (maxCategory - minCategory + 1) + minCategory);
+        List<Row> posts = session.selectPostsPageByCategory(categoryName, 100, null).getItems();
         if (posts.size() > 0) {
             Random rand = new Random();
             Row postToLike = posts.get(rand.nextInt(posts.size()));
             if (!session.userLikedPost(userId, postToLike.getUUID("postId"))) {
                 session.createLikedPostByUser(postToLike.getUUID("postId"), userId);
                 session.incrementPostLikes(postToLike.getUUID("postId"), userId);
-                System.out.printf("> [%s] added a like %n", userId);
+                EventSink.get().info("> [%s] added a like", userId);
             } else {
-                System.out.printf("> [%s] already added a like %n", userId);
+                EventSink.get().debug("> [%s] already added a like", userId);
             }
         } else {
-            System.out.printf("[%s] there are no comments to like %n", userId);
+            EventSink.get().debug("[%s] there are no comments to like", userId);
         }
     }
 
     private void removeLike(UUID userId) throws BackendException {
-        System.out.printf("> [%s] is removing a like %n", userId);
+        EventSink.get().debug("> [%s] is removing a like", userId);
         List<UUID> likes = session.getLikedPostsByUser(userId);
         if (likes.size() > 0) {
             Random rand = new Random();
             UUID postToDislike = likes.get(rand.nextInt(likes.size()));
             session.deletePostLikes(postToDislike);
             session.deleteLikedPostByUser(postToDislike, userId);
-            System.out.printf("> [%s] removed a like %n", userId);
+            EventSink.get().info("> [%s] removed a like", userId);
         } else {
-            System.out.printf("[%s] user hasn't liked anything %n", userId);
+            EventSink.get().debug("[%s] user hasn't liked anything", userId);
         }
     }
 }
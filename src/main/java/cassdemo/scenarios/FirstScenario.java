@@ -2,13 +2,14 @@ package cassdemo.scenarios;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
 import com.datastax.driver.core.Row;
 
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.UUID;
 
-public class FirstScenario extends Thread {
+public class FirstScenario extends Thread implements SteppedScenario {
     BackendSession session;
 
     public FirstScenario(BackendSession session) {
@@ -17,31 +18,33 @@ public class FirstScenario extends Thread {
 
     @Override
     public void run() {
-        UUID userId = UUID.randomUUID();
-        String name = UUID.randomUUID().toString().replace("-", "");
-        String password = UUID.randomUUID().toString().replace("-", "");
-        String email = UUID.randomUUID().toString().replace("-", "");
-        int maxAge = 100;
-        int minAge = 18;
-        int age = (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge);
+        ScenarioUser user = ScenarioUser.random();
         try {
-            session.createNewUser(userId, name, password, email, age);
+            user.register(session);
             for (int i = 0; i < 20; i++) {
-                UUID postId = UUID.randomUUID();
-                String categoryName = "category1";
-                String postContent = "abc" + i;
-                Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-                session.createNewPost(postId, userId, postContent, timestamp, name, categoryName);
-                List<Row> posts = session.selectConcretePostByAuthor(userId, timestamp, postId);
-
-                if(posts.size() == 0) {
-                    System.out.printf("[%s] expected post with id:%s, iteration: %d %n", userId, postId,i);
-                }
-
+                step(user);
             }
-            System.out.println("-------");
+            EventSink.get().info("[%s] finished", user.getUserId());
         } catch (BackendException e) {
-            e.printStackTrace();
+            EventSink.get().error("[%s] session error: %s", user.getUserId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean step(ScenarioUser user) throws BackendException {
+        int i = user.writes;
+        UUID postId = UUID.randomUUID();
+        String categoryName = "category1";
+        String postContent = "abc" + i;
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        session.createNewPost(postId, user.getUserId(), postContent, timestamp, user.getName(), categoryName);
+        user.writes++;
+        List<Row> posts = session.selectConcretePostByAuthor(user.getUserId(), timestamp, postId);
+
+        if(posts.size() == 0) {
+            EventSink.get().warn("[%s] expected post with id:%s, iteration: %d", user.getUserId(), postId, i);
+            return false;
         }
+        return true;
     }
 }
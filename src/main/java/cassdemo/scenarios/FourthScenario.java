@@ -2,13 +2,14 @@ package cassdemo.scenarios;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
 import com.datastax.driver.core.Row;
 
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.UUID;
 
-public class FourthScenario extends Thread {
+public class FourthScenario extends Thread implements SteppedScenario {
     BackendSession session;
     UUID postId;
 
@@ -19,28 +20,30 @@ public class FourthScenario extends Thread {
 
     @Override
     public void run() {
-        UUID userId = UUID.randomUUID();
-        String name = UUID.randomUUID().toString().replace("-", "");
-        String password = UUID.randomUUID().toString().replace("-", "");
-        String email = UUID.randomUUID().toString().replace("-", "");
-        int maxAge = 100;
-        int minAge = 18;
-        int age = (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge);
+        ScenarioUser user = ScenarioUser.random();
         try {
-            session.createNewUser(userId, name, password, email, age);
+            user.register(session);
             for (int i = 0; i < 20; i++) {
-                UUID commentId = UUID.randomUUID();
-                String commentContent = "abc" + i;
-                Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-                session.createNewComment(postId, userId, name, timestamp, commentId, commentContent);
-                List<Row> comments = session.selectCommentsByAuthor(userId);
-                if(comments.size() !=  i + 1) {
-                    System.out.printf("[%s] expected %d comments, got: %d ANOMALY%n", userId, i + 1, comments.size());
-                }
+                step(user);
             }
-            System.out.println("-------");
+            EventSink.get().info("[%s] finished", user.getUserId());
         } catch (BackendException e) {
-            e.printStackTrace();
+            EventSink.get().error("[%s] session error: %s", user.getUserId(), e.getMessage());
         }
     }
+
+    @Override
+    public boolean step(ScenarioUser user) throws BackendException {
+        UUID commentId = UUID.randomUUID();
+        String commentContent = "abc" + user.writes;
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        session.createNewComment(postId, user.getUserId(), user.getName(), timestamp, commentId, commentContent);
+        user.writes++;
+        List<Row> comments = session.selectCommentsByAuthor(user.getUserId());
+        if(comments.size() != user.writes) {
+            EventSink.get().warn("[%s] expected %d comments, got: %d ANOMALY", user.getUserId(), user.writes, comments.size());
+            return false;
+        }
+        return true;
+    }
 }
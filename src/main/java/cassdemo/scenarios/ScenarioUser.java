@@ -0,0 +1,50 @@
+package cassdemo.scenarios;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+
+import java.util.UUID;
+
+/*
+ * The user a scenario worker acts as, plus the little per-user state the anomaly checks
+ * need. Only ever touched by one thread at a time.
+ */
+public class ScenarioUser {
+    private final UUID userId;
+    private final String name;
+    private final String password;
+    private final String email;
+    private final int age;
+    int writes;
+
+    private ScenarioUser(UUID userId, String name, String password, String email, int age) {
+        this.userId = userId;
+        this.name = name;
+        this.password = password;
+        this.email = email;
+        this.age = age;
+    }
+
+    public static ScenarioUser random() {
+        int maxAge = 100;
+        int minAge = 18;
+        return new ScenarioUser(
+                UUID.randomUUID(),
+                UUID.randomUUID().toString().replace("-", ""),
+                UUID.randomUUID().toString().replace("-", ""),
+                UUID.randomUUID().toString().replace("-", ""),
+                (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge));
+    }
+
+    public void register(BackendSession session) throws BackendException {
+        session.createNewUser(userId, name, password, email, age);
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
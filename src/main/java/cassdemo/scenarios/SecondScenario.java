@@ -2,13 +2,14 @@ package cassdemo.scenarios;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
 import com.datastax.driver.core.Row;
 
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.UUID;
 
-public class SecondScenario extends Thread {
+public class SecondScenario extends Thread implements SteppedScenario {
     BackendSession session;
 
     public SecondScenario(BackendSession session) {
@@ -17,31 +18,32 @@ public class SecondScenario extends Thread {
 
     @Override
     public void run() {
-        UUID userId = UUID.randomUUID();
-        String name = UUID.randomUUID().toString().replace("-", "");
-        String password = UUID.randomUUID().toString().replace("-", "");
-        String email = UUID.randomUUID().toString().replace("-", "");
-        int maxAge = 100;
-        int minAge = 18;
-        int age = (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge);
+        ScenarioUser user = ScenarioUser.random();
         try {
-            session.createNewUser(userId, name, password, email, age);
+            user.register(session);
             for (int i = 0; i < 20; i++) {
-                UUID postId = UUID.randomUUID();
-                String categoryName = "category1";
-                String postContent = "abc" + i;
-                Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-                session.createNewPost(postId, userId, postContent, timestamp, name, categoryName);
-                List<Row> posts = session.selectAllPostsByAuthor(userId);
-
-                if(posts.size() !=  i + 1) {
-                    System.out.printf("[%s] expected %d posts, got: %d ANOMALY%n", userId, i + 1, posts.size());
-                }
-
+                step(user);
             }
-            System.out.println("-------");
+            EventSink.get().info("[%s] finished", user.getUserId());
         } catch (BackendException e) {
-            e.printStackTrace();
+            EventSink.get().error("[%s] session error: %s", user.getUserId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean step(ScenarioUser user) throws BackendException {
+        UUID postId = UUID.randomUUID();
+        String categoryName = "category1";
+        String postContent = "abc" + user.writes;
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        session.createNewPost(postId, user.getUserId(), postContent, timestamp, user.getName(), categoryName);
+        user.writes++;
+        List<Row> posts = session.selectAllPostsByAuthor(user.getUserId());
+
+        if(posts.size() != user.writes) {
+            EventSink.get().warn("[%s] expected %d posts, got: %d ANOMALY", user.getUserId(), user.writes, posts.size());
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,15 @@
+package cassdemo.scenarios;
+
+import cassdemo.backend.BackendException;
+
+/*
+ * A scenario broken into steps, so something other than its own run() loop (the benchmark
+ * runner) can pace it and count failures. A worker registers its ScenarioUser once and then
+ * calls step() with it as often as it likes; the scenario object itself holds no per-user
+ * state and is shared by all workers.
+ */
+public interface SteppedScenario {
+
+    /* Performs one step. Returns false when the step observed an anomaly. */
+    boolean step(ScenarioUser user) throws BackendException;
+}
@@ -2,13 +2,14 @@ package cassdemo.scenarios;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.events.EventSink;
 import com.datastax.driver.core.Row;
 
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.UUID;
 
-public class ThirdScenario extends Thread {
+public class ThirdScenario extends Thread implements SteppedScenario {
     BackendSession session;
     UUID postId;
     Timestamp createdAt;
@@ -23,24 +24,23 @@ public class ThirdScenario extends Thread {
 
     @Override
     public void run() {
-        UUID userId = UUID.randomUUID();
-        String name = UUID.randomUUID().toString().replace("-", "");
-        String password = UUID.randomUUID().toString().replace("-", "");
-        String email = UUID.randomUUID().toString().replace("-", "");
-        int maxAge = 100;
-        int minAge = 18;
-        int age = (int) Math.floor(Math.random() * (maxAge - minAge + 1) + minAge);
+        ScenarioUser user = ScenarioUser.random();
         try {
-            session.createNewUser(userId, name, password, email, age);
+            user.register(session);
+            step(user);
+            EventSink.get().info("[%s] finished", user.getUserId());
+        } catch (BackendException e) {
+            EventSink.get().error("[%s] session error: %s", user.getUserId(), e.getMessage());
+        }
+    }
 
-            List<Row> posts = session.selectConcretePostByAuthor(authorId, createdAt, postId);
+    @Override
+    public boolean step(ScenarioUser user) throws BackendException {
+        List<Row> posts = session.selectConcretePostByAuthor(authorId, createdAt, postId);
 
-            if(posts.size() != 0) {
-                session.incrementPostLikes(postId, userId);
-            }
-            System.out.println("-------");
-        } catch (BackendException e) {
-            e.printStackTrace();
+        if(posts.size() != 0) {
+            session.incrementPostLikes(postId, user.getUserId());
         }
+        return true;
     }
 }
@@ -0,0 +1,33 @@
+package cassdemo.trace;
+
+import java.util.UUID;
+
+/*
+ * One recorded operation. Keys are the partition / clustering values the operation was
+ * called with (null when not used); the payload itself isn't kept, only its size.
+ */
+public class TraceEvent {
+
+	public final TraceOp op;
+	public final long startMicros;
+	public final int latencyMicros;
+	public final int payloadSize;
+	public final UUID key1;
+	public final UUID key2;
+	public final UUID key3;
+	public final long timestamp;
+	public final String name;
+
+	public TraceEvent(TraceOp op, long startMicros, int latencyMicros, int payloadSize,
+			UUID key1, UUID key2, UUID key3, long timestamp, String name) {
+		this.op = op;
+		this.startMicros = startMicros;
+		this.latencyMicros = latencyMicros;
+		this.payloadSize = payloadSize;
+		this.key1 = key1;
+		this.key2 = key2;
+		this.key3 = key3;
+		this.timestamp = timestamp;
+		this.name = name;
+	}
+}
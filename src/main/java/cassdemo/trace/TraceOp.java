@@ -0,0 +1,65 @@
+package cassdemo.trace;
+
+/*
+ * Operations a trace can hold. The code is what goes into the file, so existing codes
+ * must never change.
+ */
+public enum TraceOp {
+	CREATE_USER(1),
+	CREATE_POST(2),
+	DELETE_POST(3),
+	SELECT_POSTS_BY_AUTHOR(4),
+	SELECT_POSTS_BY_CATEGORY(5),
+	SELECT_CONCRETE_POST_BY_AUTHOR(6),
+	SELECT_POST_BY_ID(7),
+	CREATE_COMMENT(8),
+	DELETE_COMMENT(9),
+	SELECT_COMMENTS_BY_POST(10),
+	SELECT_COMMENTS_BY_AUTHOR(11),
+	USER_LIKED_POST(12),
+	CREATE_LIKED_POST(13),
+	DELETE_LIKED_POST(14),
+	SELECT_LIKED_POSTS_BY_USER(15),
+	INCREMENT_POST_LIKES(16),
+	DELETE_POST_LIKES(17),
+	SELECT_POST_LIKES(18),
+	SELECT_POSTS(19),
+	SELECT_POSTS_PAGE_BY_AUTHOR(20),
+	SELECT_POSTS_PAGE_BY_CATEGORY(21),
+	SELECT_COMMENTS_PAGE_BY_AUTHOR(22),
+	SELECT_LIKED_POSTS_PAGE_BY_USER(23),
+	SELECT_COMMENTS_PAGE_BY_POST(24),
+	EDIT_POST(25),
+	EDIT_COMMENT(26),
+	DECREMENT_POST_LIKES(27),
+	SELECT_NEWEST_POSTS_BY_AUTHOR(28),
+	SELECT_NEWEST_POSTS_BY_CATEGORY(29),
+	SELECT_CONCRETE_POST_BY_CATEGORY(30),
+	SELECT_CATEGORIES(31),
+	SELECT_POSTS_BY_ID(32),
+	SELECT_POST_LIKES_BY_IDS(33),
+	SELECT_TIMELINE_BY_CATEGORIES(34),
+	SELECT_TIMELINE_BY_AUTHORS(35);
+
+	private static final TraceOp[] BY_CODE = new TraceOp[64];
+
+	static {
+		for (TraceOp op : values()) {
+			BY_CODE[op.code] = op;
+		}
+	}
+
+	final byte code;
+
+	TraceOp(int code) {
+		this.code = (byte) code;
+	}
+
+	static TraceOp fromCode(byte code) {
+		TraceOp op = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+		if (op == null) {
+			throw new IllegalArgumentException("Unknown trace op code " + code);
+		}
+		return op;
+	}
+}
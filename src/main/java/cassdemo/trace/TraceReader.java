@@ -0,0 +1,101 @@
+package cassdemo.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * Reads a file written by TraceRecorder. A record cut off at the end of the file (the
+ * recorder didn't get to close) is ignored.
+ */
+public class TraceReader {
+
+	private TraceReader() {
+	}
+
+	/* All events of the trace, sorted by start time. */
+	public static List<TraceEvent> readAll(File file) throws IOException {
+		List<TraceEvent> events = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+			readFully(channel, buffer, TraceRecorder.MAGIC.length + 8);
+			byte[] magic = new byte[TraceRecorder.MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, TraceRecorder.MAGIC)) {
+				throw new IOException(file + " is not a trace file");
+			}
+			buffer.getLong();
+			buffer.compact();
+
+			while (true) {
+				buffer.flip();
+				TraceEvent event;
+				while ((event = next(buffer)) != null) {
+					events.add(event);
+				}
+				buffer.compact();
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+			}
+		}
+		events.sort(Comparator.comparingLong(event -> event.startMicros));
+		return events;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Trace file truncated");
+			}
+		}
+		buffer.flip();
+	}
+
+	/* Decodes the next record, or returns null (buffer untouched) when it isn't complete yet. */
+	private static TraceEvent next(ByteBuffer buffer) {
+		int start = buffer.position();
+		if (buffer.remaining() < 18) {
+			return null;
+		}
+		TraceOp op = TraceOp.fromCode(buffer.get());
+		int mask = buffer.get();
+		int needed = 16
+				+ (mask & TraceRecorder.HAS_KEY1) / TraceRecorder.HAS_KEY1 * 16
+				+ (mask & TraceRecorder.HAS_KEY2) / TraceRecorder.HAS_KEY2 * 16
+				+ (mask & TraceRecorder.HAS_KEY3) / TraceRecorder.HAS_KEY3 * 16
+				+ ((mask & TraceRecorder.HAS_TIMESTAMP) != 0 ? 8 : 0)
+				+ ((mask & TraceRecorder.HAS_NAME) != 0 ? 2 : 0);
+		if (buffer.remaining() < needed) {
+			buffer.position(start);
+			return null;
+		}
+		long startMicros = buffer.getLong();
+		int latency = buffer.getInt();
+		int payloadSize = buffer.getInt();
+		UUID key1 = (mask & TraceRecorder.HAS_KEY1) != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+		UUID key2 = (mask & TraceRecorder.HAS_KEY2) != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+		UUID key3 = (mask & TraceRecorder.HAS_KEY3) != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+		long timestamp = (mask & TraceRecorder.HAS_TIMESTAMP) != 0 ? buffer.getLong() : 0;
+		String name = null;
+		if ((mask & TraceRecorder.HAS_NAME) != 0) {
+			int length = buffer.getShort();
+			if (buffer.remaining() < length) {
+				buffer.position(start);
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			name = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new TraceEvent(op, startMicros, latency, payloadSize, key1, key2, key3, timestamp, name);
+	}
+}
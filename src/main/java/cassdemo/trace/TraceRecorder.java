@@ -0,0 +1,145 @@
+package cassdemo.trace;
+
+import cassdemo.backend.OperationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Appends operations to a binary trace file through a 64 KB direct buffer.
+ *
+ * File: magic "SRDSTRC1", long epoch millis of the recording start, then records of
+ * op code byte, presence mask byte, long start (us since recording start), int latency (us),
+ * int payload size, then only the present fields: up to three UUIDs (2 longs each), a long
+ * timestamp and a short-length UTF-8 name. Records are written when the operation completes,
+ * so they are not in start order.
+ *
+ * A write error never reaches the operation being recorded: recording stops, the error is
+ * logged once, and later operations are only counted as dropped.
+ *
+ * Every BackendSession operation is recorded except truncateTables. Operations that only
+ * delegate, such as deletePost(postId), editPost(postId, content), selectAllPostIdsByAuthor
+ * and selectNewestPostsTimeline, show up as the operations they call.
+ */
+public class TraceRecorder implements OperationListener, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+
+	static final byte[] MAGIC = "SRDSTRC1".getBytes(StandardCharsets.US_ASCII);
+	static final int HAS_KEY1 = 1;
+	static final int HAS_KEY2 = 2;
+	static final int HAS_KEY3 = 4;
+	static final int HAS_TIMESTAMP = 8;
+	static final int HAS_NAME = 16;
+
+	private static final int MAX_RECORD = 2 + 8 + 4 + 4 + 3 * 16 + 8 + 2 + Short.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile IOException failure;
+
+	public TraceRecorder(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.put(MAGIC).putLong(System.currentTimeMillis());
+	}
+
+	@Override
+	public void operationCompleted(TraceOp op, long startNanos, long endNanos, int payloadSize,
+			UUID key1, UUID key2, UUID key3, long timestamp, String name) {
+		if (failure != null) {
+			dropped.incrementAndGet();
+			return;
+		}
+		byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+		int mask = (key1 != null ? HAS_KEY1 : 0) | (key2 != null ? HAS_KEY2 : 0) | (key3 != null ? HAS_KEY3 : 0)
+				| (timestamp != 0 ? HAS_TIMESTAMP : 0) | (nameBytes != null ? HAS_NAME : 0);
+
+		synchronized (this) {
+			if (buffer.remaining() < MAX_RECORD && !flushBuffer()) {
+				dropped.incrementAndGet();
+				return;
+			}
+			buffer.put(op.code).put((byte) mask)
+					.putLong((startNanos - this.startNanos) / 1000)
+					.putInt((int) Math.min(Integer.MAX_VALUE, (endNanos - startNanos) / 1000))
+					.putInt(payloadSize);
+			putUuid(key1);
+			putUuid(key2);
+			putUuid(key3);
+			if (timestamp != 0) {
+				buffer.putLong(timestamp);
+			}
+			if (nameBytes != null) {
+				buffer.putShort((short) Math.min(nameBytes.length, Short.MAX_VALUE)).put(nameBytes, 0, Math.min(nameBytes.length, Short.MAX_VALUE));
+			}
+			recorded.incrementAndGet();
+		}
+	}
+
+	private void putUuid(UUID uuid) {
+		if (uuid != null) {
+			buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+		}
+	}
+
+	/* Returns false, and stops recording, when the file can't be written. */
+	private boolean flushBuffer() {
+		if (failure != null) {
+			return false;
+		}
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			return true;
+		} catch (IOException e) {
+			failure = e;
+			logger.error("Could not write trace file, recording stopped", e);
+			return false;
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	public synchronized void flush() {
+		flushBuffer();
+	}
+
+	public long getRecorded() {
+		return recorded.get();
+	}
+
+	/* Operations not in the file because writing it failed. */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/* Null unless writing the file failed. */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flushBuffer();
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("trace: recorded=%d dropped=%d%s", getRecorded(), getDropped(),
+				failure == null ? "" : " failure=" + failure.getMessage());
+	}
+}
@@ -0,0 +1,273 @@
+package cassdemo.trace;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.metrics.LatencyHistogram;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Re-issues a recorded trace through BackendSession. Events are dispatched in start order
+ * at `speed` times the recorded pace (0 = as fast as possible) to a pool of `workers`
+ * threads. An event runs only after every earlier event that touched one of its keys (post,
+ * user or category) has finished, so operations on the same key run in recorded order even
+ * when they reach it through different tables, e.g. a post's creation and a later read of
+ * its author's posts; unrelated events run concurrently. Payloads are regenerated with the
+ * recorded size. Cursors are not recorded, so page reads re-read the first page with the
+ * recorded page size. Reads over many keys only record how many keys they had, so they
+ * show up in the recorded latencies but are not replayed.
+ *
+ * In timed mode latency is measured from the event's scheduled start, so time spent
+ * waiting behind a slow operation on the same worker counts against the cluster instead
+ * of silently lowering the offered load.
+ */
+public class TraceReplayer {
+
+	private static final Set<TraceOp> NOT_REPLAYED = EnumSet.of(TraceOp.SELECT_POSTS_BY_ID, TraceOp.SELECT_POST_LIKES_BY_IDS,
+			TraceOp.SELECT_TIMELINE_BY_CATEGORIES, TraceOp.SELECT_TIMELINE_BY_AUTHORS);
+
+	private final BackendSession session;
+	private final int workers;
+	private final double speed;
+
+	private final Map<TraceOp, LatencyHistogram> recorded = new EnumMap<>(TraceOp.class);
+	private final Map<TraceOp, LatencyHistogram> replayed = new EnumMap<>(TraceOp.class);
+	private final AtomicLong errors = new AtomicLong();
+
+	public TraceReplayer(BackendSession session, int workers, double speed) {
+		this.session = session;
+		this.workers = workers;
+		this.speed = speed;
+		for (TraceOp op : TraceOp.values()) {
+			recorded.put(op, new LatencyHistogram());
+			replayed.put(op, new LatencyHistogram());
+		}
+	}
+
+	public void replay(List<TraceEvent> events) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		CountDownLatch done = new CountDownLatch(events.size());
+		// the last event per key; entries of finished events are removed again
+		Map<Object, CompletableFuture<Void>> lastByKey = new ConcurrentHashMap<>();
+
+		long replayStart = System.nanoTime();
+		long traceStart = events.isEmpty() ? 0 : events.get(0).startMicros;
+		for (TraceEvent event : events) {
+			long scheduled = speed > 0
+					? replayStart + (long) ((event.startMicros - traceStart) * 1000 / speed)
+					: 0;
+			if (scheduled != 0) {
+				long wait = scheduled - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			recorded.get(event.op).record(event.latencyMicros);
+			if (NOT_REPLAYED.contains(event.op)) {
+				done.countDown();
+				continue;
+			}
+
+			List<Object> keys = orderingKeys(event);
+			List<CompletableFuture<Void>> before = new ArrayList<>(keys.size());
+			for (Object key : keys) {
+				CompletableFuture<Void> previous = lastByKey.get(key);
+				if (previous != null) {
+					before.add(previous);
+				}
+			}
+			Runnable task = () -> {
+				try {
+					execute(event, scheduled);
+				} finally {
+					done.countDown();
+				}
+			};
+			CompletableFuture<Void> future = before.isEmpty()
+					? CompletableFuture.runAsync(task, pool)
+					: CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0])).thenRunAsync(task, pool);
+			for (Object key : keys) {
+				lastByKey.put(key, future);
+				future.whenComplete((result, failure) -> lastByKey.remove(key, future));
+			}
+		}
+
+		done.await();
+		pool.shutdown();
+	}
+
+	/* Post, user and category the event touches; key3 (a comment) lives in its post's partitions. */
+	private static List<Object> orderingKeys(TraceEvent event) {
+		List<Object> keys = new ArrayList<>(3);
+		if (event.key1 != null) {
+			keys.add(event.key1);
+		}
+		if (event.key2 != null) {
+			keys.add(event.key2);
+		}
+		if (event.name != null) {
+			keys.add(event.name);
+		}
+		return keys;
+	}
+
+	private void execute(TraceEvent event, long scheduled) {
+		long start = System.nanoTime();
+		try {
+			issue(event);
+		} catch (BackendException | RuntimeException e) {
+			errors.incrementAndGet();
+		}
+		replayed.get(event.op).recordNanos(System.nanoTime() - (scheduled != 0 ? scheduled : start));
+	}
+
+	private void issue(TraceEvent e) throws BackendException {
+		Timestamp timestamp = new Timestamp(e.timestamp);
+		switch (e.op) {
+			case CREATE_USER:
+				String text = payload(e.payloadSize / 3);
+				session.createNewUser(e.key2, text, text, text, 30);
+				break;
+			case CREATE_POST:
+				session.createNewPost(e.key1, e.key2, payload(e.payloadSize), timestamp, "replay", e.name);
+				break;
+			case DELETE_POST:
+				session.deletePost(e.key1, e.key2, timestamp, e.name);
+				break;
+			case SELECT_POSTS_BY_AUTHOR:
+				session.selectAllPostsByAuthor(e.key2);
+				break;
+			case SELECT_POSTS_BY_CATEGORY:
+				session.selectAllPostsByCategory(e.name);
+				break;
+			case SELECT_CONCRETE_POST_BY_AUTHOR:
+				session.selectConcretePostByAuthor(e.key2, timestamp, e.key1);
+				break;
+			case SELECT_POST_BY_ID:
+				session.selectPostById(e.key1);
+				break;
+			case CREATE_COMMENT:
+				session.createNewComment(e.key1, e.key2, "replay", timestamp, e.key3, payload(e.payloadSize));
+				break;
+			case DELETE_COMMENT:
+				session.deleteComment(e.key1, timestamp, e.key3, e.key2);
+				break;
+			case SELECT_COMMENTS_BY_POST:
+				session.selectCommentsByPost(e.key1);
+				break;
+			case SELECT_COMMENTS_BY_AUTHOR:
+				session.selectCommentsByAuthor(e.key2);
+				break;
+			case USER_LIKED_POST:
+				session.userLikedPost(e.key2, e.key1);
+				break;
+			case CREATE_LIKED_POST:
+				session.createLikedPostByUser(e.key1, e.key2);
+				break;
+			case DELETE_LIKED_POST:
+				session.deleteLikedPostByUser(e.key1, e.key2);
+				break;
+			case SELECT_LIKED_POSTS_BY_USER:
+				session.getLikedPostsByUser(e.key2);
+				break;
+			case INCREMENT_POST_LIKES:
+				session.incrementPostLikes(e.key1, e.key2);
+				break;
+			case DELETE_POST_LIKES:
+				session.deletePostLikes(e.key1);
+				break;
+			case SELECT_POST_LIKES:
+				session.selectPostLikes(e.key1);
+				break;
+			case SELECT_POSTS:
+				session.selectPosts();
+				break;
+			case SELECT_POSTS_PAGE_BY_AUTHOR:
+				session.selectPostsPageByAuthor(e.key2, e.payloadSize, null);
+				break;
+			case SELECT_POSTS_PAGE_BY_CATEGORY:
+				session.selectPostsPageByCategory(e.name, e.payloadSize, null);
+				break;
+			case SELECT_COMMENTS_PAGE_BY_AUTHOR:
+				session.selectCommentsPageByAuthor(e.key2, e.payloadSize, null);
+				break;
+			case SELECT_LIKED_POSTS_PAGE_BY_USER:
+				session.selectLikedPostsPageByUser(e.key2, e.payloadSize, null);
+				break;
+			case SELECT_COMMENTS_PAGE_BY_POST:
+				session.selectCommentsPageByPost(e.key1, e.payloadSize, null);
+				break;
+			case EDIT_POST:
+				session.editPost(e.key1, e.key2, payload(e.payloadSize), timestamp, e.name);
+				break;
+			case EDIT_COMMENT:
+				session.editComment(e.key1, timestamp, e.key3, e.key2, payload(e.payloadSize));
+				break;
+			case DECREMENT_POST_LIKES:
+				session.decrementPostLikes(e.key1);
+				break;
+			case SELECT_NEWEST_POSTS_BY_AUTHOR:
+				session.selectNewestPostsByAuthor(e.key2);
+				break;
+			case SELECT_NEWEST_POSTS_BY_CATEGORY:
+				session.selectNewestPostsByCategory(e.name);
+				break;
+			case SELECT_CONCRETE_POST_BY_CATEGORY:
+				session.selectConcretePostByCategory(e.name, timestamp, e.key1);
+				break;
+			case SELECT_CATEGORIES:
+				session.selectCategories();
+				break;
+			default:
+				// multi-key reads, see NOT_REPLAYED
+				break;
+		}
+	}
+
+	private static String payload(int size) {
+		StringBuilder builder = new StringBuilder(size);
+		for (int i = 0; i < size; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		return builder.toString();
+	}
+
+	public Map<TraceOp, LatencyHistogram> getRecorded() {
+		return recorded;
+	}
+
+	public Map<TraceOp, LatencyHistogram> getReplayed() {
+		return replayed;
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/* Recorded vs replayed latency, one line pair per operation that occurred. */
+	public String report() {
+		StringBuilder builder = new StringBuilder();
+		for (TraceOp op : TraceOp.values()) {
+			if (recorded.get(op).getCount() == 0) {
+				continue;
+			}
+			builder.append(String.format("%-32s recorded %s%n", op, recorded.get(op)));
+			builder.append(String.format("%-32s replayed %s%n", "", replayed.get(op)));
+		}
+		builder.append(String.format("errors: %d%n", getErrors()));
+		return builder.toString();
+	}
+}